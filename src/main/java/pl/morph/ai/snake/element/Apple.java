@@ -2,9 +2,16 @@ package pl.morph.ai.snake.element;
 
 import java.io.Serializable;
 
+/**
+ * Apple at a cell of the board, in columns and rows.
+ */
 public class Apple implements Serializable {
+    private static final long serialVersionUID = -5527632335698479002L;
+
     private int apple_x;
     private int apple_y;
+    // False in apples saved while positions were pixels, until the snake holding them converts them
+    private boolean cells = true;
 
     public Apple (int apple_x, int apple_y) {
         this.apple_x = apple_x;
@@ -29,6 +36,17 @@ public class Apple implements Serializable {
         return this;
     }
 
+    /**
+     * Turns the pixel position of an apple saved before positions were cells into its cell.
+     */
+    void toCells(int dotSize) {
+        if (!cells) {
+            apple_x /= dotSize;
+            apple_y /= dotSize;
+            cells = true;
+        }
+    }
+
     public Apple clone() {
         Apple apple = new Apple(apple_x, apple_y);
         return apple;
@@ -0,0 +1,182 @@
+package pl.morph.ai.snake.element;
+
+import java.util.List;
+
+/**
+ * Walls of a board as one flat array of cells, {@code row * columns + column}. Built once per wall list and shared
+ * by every snake on that board, so a wall test is one array lookup instead of a scan over all walls.
+ * <p>
+ * It also holds the ray tables of the snake's vision: for every cell and each of the 8 directions, the number of
+ * steps until a ray from that cell hits a wall or the edge, and {@code 1 / steps} for every possible distance.
+ */
+public final class BoardGrid {
+    private static volatile BoardGrid last;
+
+    private final int columns;
+    private final int rows;
+    private final List<Wall> source;
+    private final boolean[] walls;
+    // Every cell that is not a wall, where a snake may start
+    private final int[] openCells;
+    // Steps from cell c in direction d to the first wall or edge at [c * 9 + d], d = (dy + 1) * 3 + dx + 1
+    private final int[] wallDistance;
+    private final int[] step = new int[9];
+    private final double[] reciprocal;
+
+    private BoardGrid(int columns, int rows, List<Wall> source) {
+        this.columns = columns;
+        this.rows = rows;
+        this.source = source;
+        this.walls = new boolean[columns * rows];
+        if (source != null) {
+            for (Wall wall : source) {
+                // A wall off the board stands where the edge already stops everything
+                int cell = cell(wall.getX(), wall.getY());
+                if (cell >= 0) {
+                    walls[cell] = true;
+                }
+            }
+        }
+        int open = 0;
+        for (boolean wall : walls) {
+            if (!wall) {
+                open++;
+            }
+        }
+        openCells = new int[open];
+        open = 0;
+        for (int cell = 0; cell < walls.length; cell++) {
+            if (!walls[cell]) {
+                openCells[open++] = cell;
+            }
+        }
+
+        wallDistance = new int[walls.length * 9];
+        reciprocal = new double[Math.max(columns, rows) + 2];
+        for (int k = 1; k < reciprocal.length; k++) {
+            reciprocal[k] = 1.0 / k;
+        }
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                int d = (dy + 1) * 3 + dx + 1;
+                step[d] = dy * columns + dx;
+                if (dx == 0 && dy == 0) {
+                    continue;
+                }
+                for (int row = 0; row < rows; row++) {
+                    for (int column = 0; column < columns; column++) {
+                        int k = 1;
+                        int c = column + dx;
+                        int r = row + dy;
+                        while (c >= 0 && c < columns && r >= 0 && r < rows && !walls[r * columns + c]) {
+                            k++;
+                            c += dx;
+                            r += dy;
+                        }
+                        wallDistance[(row * columns + column) * 9 + d] = k;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Grid of {@code walls} on a board of the given size, the same instance as long as the same list is asked for.
+     */
+    public static BoardGrid of(int columns, int rows, List<Wall> walls) {
+        BoardGrid grid = last;
+        if (grid == null || !grid.matches(columns, rows, walls)) {
+            grid = new BoardGrid(columns, rows, walls);
+            last = grid;
+        }
+        return grid;
+    }
+
+    boolean matches(int columns, int rows, List<Wall> walls) {
+        return source == walls && this.columns == columns && this.rows == rows;
+    }
+
+    public int size() {
+        return walls.length;
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Cell at (column, row), or -1 if it is off the board.
+     */
+    public int cell(int column, int row) {
+        if (column < 0 || row < 0 || column >= columns || row >= rows) {
+            return -1;
+        }
+        return row * columns + column;
+    }
+
+    public int column(int cell) {
+        return cell % columns;
+    }
+
+    public int row(int cell) {
+        return cell / columns;
+    }
+
+    /**
+     * Ray direction of a step of (stepX, stepY) cells, or -1 unless it moves at most one cell along each axis.
+     */
+    public int direction(int stepX, int stepY) {
+        if (stepX < -1 || stepX > 1 || stepY < -1 || stepY > 1 || (stepX == 0 && stepY == 0)) {
+            return -1;
+        }
+        return (stepY + 1) * 3 + stepX + 1;
+    }
+
+    /**
+     * Steps from {@code cell} in {@code direction} until the ray hits a wall or leaves the board.
+     */
+    public int wallDistance(int cell, int direction) {
+        return wallDistance[cell * 9 + direction];
+    }
+
+    /**
+     * Difference of cell indices between neighbours in {@code direction}.
+     */
+    public int step(int direction) {
+        return step[direction];
+    }
+
+    /**
+     * {@code 1.0 / steps} for any distance a ray on this board can have.
+     */
+    public double reciprocal(int steps) {
+        return reciprocal[steps];
+    }
+
+    /**
+     * Cell picked by {@code random} in [0, 1), uniformly among the cells that are not walls, or among all cells
+     * on a board that is walls only.
+     */
+    public int randomOpenCell(double random) {
+        if (openCells.length == 0) {
+            return (int) (random * walls.length);
+        }
+        return FreeCells.sample(openCells, 0, openCells.length, random);
+    }
+
+    public boolean isWallCell(int cell) {
+        return walls[cell];
+    }
+
+    /**
+     * Whether (column, row) is a wall or off the board.
+     */
+    public boolean isWall(int column, int row) {
+        int cell = cell(column, row);
+        return cell < 0 || walls[cell];
+    }
+}
@@ -181,12 +181,20 @@ public enum Direction {
     }
 
     private Direction opposite;
+    // look(1, lookDirection) of this heading by lookDirection ordinal, computed once
+    private int[][] rays;
 
     static {
         UP.opposite = DOWN;
         DOWN.opposite = UP;
         LEFT.opposite = RIGHT;
         RIGHT.opposite = LEFT;
+        for (Direction heading : values()) {
+            heading.rays = new int[values().length][];
+            for (Direction lookDirection : values()) {
+                heading.rays[lookDirection.ordinal()] = heading.look(1, lookDirection);
+            }
+        }
     }
 
     public static Direction random() {
@@ -219,6 +227,43 @@ public enum Direction {
 
     public abstract int[] look(int dotSize, Direction lookDirection);
 
+    /**
+     * {@link #look(int, Direction)} in cells instead of pixels, from a shared table that must not be modified.
+     */
+    public int[] ray(Direction lookDirection) {
+        return rays[lookDirection.ordinal()];
+    }
+
+    /**
+     * Heading after a snake heading this way decides 0 (turn left), 1 (turn right) or 2 (keep going).
+     */
+    public Direction turn(int decision) {
+        if (decision == 0) {
+            switch (this) {
+                case LEFT:
+                    return DOWN;
+                case DOWN:
+                    return RIGHT;
+                case UP:
+                    return LEFT;
+                case RIGHT:
+                    return UP;
+            }
+        } else if (decision == 1) {
+            switch (this) {
+                case LEFT:
+                    return UP;
+                case DOWN:
+                    return LEFT;
+                case UP:
+                    return RIGHT;
+                case RIGHT:
+                    return DOWN;
+            }
+        }
+        return this;
+    }
+
     public boolean canMoveThere(Direction whereToGo) {
         if (whereToGo.equals(opposite)) {
             return false;
@@ -0,0 +1,70 @@
+package pl.morph.ai.snake.element;
+
+/**
+ * Set of free board cells kept as a swap array: the first {@code count} entries of {@code cells} are the free cells
+ * in any order and {@code slots[cell]} is where a cell sits in {@code cells}. Freeing a cell, occupying it and
+ * drawing a uniformly random free cell are all O(1).
+ * <p>
+ * The arrays belong to the caller and a set starts at {@code offset} in both of them, so one pair of arrays can hold
+ * the sets of many boards. Every method that changes the set returns the new free count.
+ */
+public final class FreeCells {
+
+    private FreeCells() {
+    }
+
+    /**
+     * Makes all {@code size} cells free.
+     */
+    public static int fill(int[] cells, int[] slots, int offset, int size) {
+        for (int cell = 0; cell < size; cell++) {
+            cells[offset + cell] = cell;
+            slots[offset + cell] = cell;
+        }
+        return size;
+    }
+
+    public static boolean isFree(int[] slots, int offset, int count, int cell) {
+        return slots[offset + cell] < count;
+    }
+
+    /**
+     * Takes {@code cell} out of the free set, if it is in it.
+     */
+    public static int occupy(int[] cells, int[] slots, int offset, int count, int cell) {
+        int slot = slots[offset + cell];
+        if (slot >= count) {
+            return count;
+        }
+        int last = count - 1;
+        int moved = cells[offset + last];
+        cells[offset + slot] = moved;
+        slots[offset + moved] = slot;
+        cells[offset + last] = cell;
+        slots[offset + cell] = last;
+        return last;
+    }
+
+    /**
+     * Puts {@code cell} back into the free set, if it is not in it.
+     */
+    public static int release(int[] cells, int[] slots, int offset, int count, int cell) {
+        int slot = slots[offset + cell];
+        if (slot < count) {
+            return count;
+        }
+        int moved = cells[offset + count];
+        cells[offset + slot] = moved;
+        slots[offset + moved] = slot;
+        cells[offset + count] = cell;
+        slots[offset + cell] = count;
+        return count + 1;
+    }
+
+    /**
+     * Free cell picked by {@code random} in [0, 1), uniformly among the {@code count} free cells.
+     */
+    public static int sample(int[] cells, int offset, int count, double random) {
+        return cells[offset + (int) (random * count)];
+    }
+}
@@ -3,14 +3,15 @@ package pl.morph.ai.snake.element;
 import pl.morph.ai.snake.engine.NeuralNetwork;
 import pl.morph.ai.snake.page.Scores;
 
-import java.awt.*;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.Random;
-import java.util.Set;
 
 import static java.lang.Math.floor;
 import static java.lang.Math.pow;
@@ -30,8 +31,19 @@ public class Snake implements Serializable {
     private int dotSize;
     private Apple appleToEat;
     private int length = 1;
+    // Columns and rows of the body, head first, as saved and as handed out by getX()/getY()
     private int x[];
     private int y[];
+    // False in snakes saved while x/y were pixels
+    private boolean cells = true;
+    // The body while simulating, a ring of board cells: segment i, head first, is body[(head + i) % body.length]
+    private transient int[] body;
+    private transient int head;
+    // The head's own column and row, also once it has left the board
+    private transient int headColumn;
+    private transient int headRow;
+    // x/y are newer than the ring, which is read from them before the next use
+    private transient boolean bodyInArrays = true;
     private Score snakeScore;
     private long lifetime = 0;
     private long timeLeft = 100;
@@ -60,6 +72,9 @@ public class Snake implements Serializable {
     final int output_count = 3;
 
     final int look_count = 3;
+    // Rays of look() relative to the heading, in the order of the vision vector
+    private static final Direction[] LOOK_ORDER = {Direction.LEFT, Direction.UP, Direction.RIGHT, Direction.DOWN,
+            Direction.TOP_LEFT, Direction.TOP_RIGHT, Direction.DOWN_RIGHT, Direction.DOWN_LEFT};
     double vision[] = new double[input_count];
     double decision[] = new double[output_count];
 
@@ -67,6 +82,20 @@ public class Snake implements Serializable {
 
     private List<Wall> walls;
 
+    // Number of body segments 1..length-1 on every board cell. move() keeps it in step, it is rebuilt when the
+    // length, the board or the arrays handed out by getX()/getY() may have changed it from outside
+    private transient int[] bodyCells;
+    private transient BoardGrid bodyCellsBoard;
+    private transient int bodyCellsLength;
+    private transient boolean bodyCellsValid;
+    private transient BoardGrid board;
+    // Source of apples and starting cells, Math.random() unless a seeded one is set
+    private transient Random random;
+    // Cells free of walls, body and head as a FreeCells swap array, kept in step together with bodyCells
+    private transient int[] freeCells;
+    private transient int[] freeSlots;
+    private transient int freeCount;
+
     public Snake(int boardWidth,
                  int boardHeight,
                  int delay,
@@ -74,6 +103,23 @@ public class Snake implements Serializable {
                  List<Apple> foodList,
                  int dotSize,
                  List<Wall> walls) {
+        this(boardWidth, boardHeight, delay, humanPlaying, foodList, dotSize, walls, null);
+        if (!humanPlaying) {
+            brain = new NeuralNetwork(input_count, hidden_nodes, output_count, hidden_layers);
+        }
+    }
+
+    /**
+     * Snake steered by an existing {@code brain}, no random network is created for it.
+     */
+    public Snake(int boardWidth,
+                 int boardHeight,
+                 int delay,
+                 boolean humanPlaying,
+                 List<Apple> foodList,
+                 int dotSize,
+                 List<Wall> walls,
+                 NeuralNetwork brain) {
         this.dotSize = dotSize;
         this.delay = delay;
         this.humanPlaying = humanPlaying;
@@ -93,31 +139,61 @@ public class Snake implements Serializable {
         if (foodList != null) {
             this.foodList = foodList;
         }
-        if (!humanPlaying) {
-            brain = new NeuralNetwork(input_count, hidden_nodes, output_count, hidden_layers);
-        }
+        this.brain = brain;
 
         snakeScore = new Score();
         snakeScore.setScore(0);
     }
 
     public Snake cloneThis() {  //clone the pl.morph.ai.snake
-        Snake clone = new Snake(boardWidth, boardHeight, delay, humanPlaying, null, dotSize, walls);
-        clone.brain = brain.clone();
+        Snake clone = new Snake(boardWidth, boardHeight, delay, humanPlaying, null, dotSize, walls, brain.clone());
         clone.startingDirection = Direction.random();
         clone.direction = clone.startingDirection;
         return clone;
     }
 
     public Snake cloneForReplay() {  //clone a version of the pl.morph.ai.snake that will be used for a replay
-        Snake clone = new Snake(boardWidth, boardHeight, delay, humanPlaying, foodList, dotSize, walls);
-        clone.brain = brain.clone();
+        return cloneForReplay(brain.clone());
+    }
+
+    /**
+     * Replay clone steered by {@code brain}, which already holds a copy of this snake's network.
+     */
+    public Snake cloneForReplay(NeuralNetwork brain) {
+        Snake clone = new Snake(boardWidth, boardHeight, delay, humanPlaying, foodList, dotSize, walls, brain);
         clone.direction = this.startingDirection;
         clone.startingDirection = this.startingDirection;
         clone.setStartingPosition(this.startingPosition);
         return clone;
     }
 
+    /**
+     * Puts this snake back into the state of a newly constructed one steered by {@code brain}, keeping its
+     * board settings and reusing its body arrays. Used to recycle snakes between generations.
+     */
+    public void reset(NeuralNetwork brain) {
+        this.brain = brain;
+        appleToEat = null;
+        length = 1;
+        lifetime = 0;
+        timeLeft = maxLife;
+        fitness = 0;
+        inGame = true;
+        startingDirection = Direction.random();
+        direction = startingDirection;
+        showIt = false;
+        // A replay clone may still share the old list
+        foodList = new ArrayList<>();
+        foodIterate = 0;
+        bestSnake = false;
+        scores = null;
+        wallCollide = false;
+        bodyCollide = false;
+        startingPosition = null;
+        snakeScore.setScore(0);
+        bodyCellsValid = false;
+    }
+
     public Apple getAppleToEat() {
         return appleToEat;
     }
@@ -136,24 +212,179 @@ public class Snake implements Serializable {
         return this;
     }
 
+    /**
+     * The body columns, head first. The caller may change them, the snake reads them back before it next
+     * moves, looks or tests a collision.
+     */
     public int[] getX() {
+        writeBody();
         return x;
     }
 
     public Snake setX(int[] x) {
+        writeBody();
         this.x = x;
         return this;
     }
 
+    /**
+     * The body rows, head first, see {@link #getX()}.
+     */
     public int[] getY() {
+        writeBody();
         return y;
     }
 
     public Snake setY(int[] y) {
+        writeBody();
         this.y = y;
         return this;
     }
 
+    /**
+     * Column of body segment {@code i}, head first.
+     */
+    public int getColumn(int i) {
+        readBody();
+        return i == 0 ? headColumn : board().column(body[at(i)]);
+    }
+
+    /**
+     * Row of body segment {@code i}, head first.
+     */
+    public int getRow(int i) {
+        readBody();
+        return i == 0 ? headRow : board().row(body[at(i)]);
+    }
+
+    // Index of body segment i in the ring
+    private int at(int i) {
+        int index = head + i;
+        return index < body.length ? index : index - body.length;
+    }
+
+    // Cells of x/y into the ring, when they were handed out or loaded since the last time
+    private void readBody() {
+        if (!bodyInArrays) {
+            return;
+        }
+        encode(x, y);
+        bodyInArrays = false;
+    }
+
+    // Cells of the first length columns and rows into the ring, head first
+    private void encode(int[] columns, int[] rows) {
+        BoardGrid grid = board();
+        int capacity = Math.max(x.length, grid.size());
+        if (body == null || body.length != capacity) {
+            body = new int[capacity];
+        }
+        head = 0;
+        headColumn = columns[0];
+        headRow = rows[0];
+        for (int i = 0; i < length; i++) {
+            body[i] = grid.cell(columns[i], rows[i]);
+        }
+        bodyCellsValid = false;
+    }
+
+    // The ring back into x/y, head first
+    private void writeBody() {
+        if (bodyInArrays) {
+            return;
+        }
+        if (x.length < length) {
+            x = Arrays.copyOf(x, body.length);
+            y = Arrays.copyOf(y, body.length);
+        }
+        decode(x, y);
+        bodyInArrays = true;
+    }
+
+    // Columns and rows of the ring, head first, into the first length entries
+    private void decode(int[] columns, int[] rows) {
+        BoardGrid grid = board();
+        columns[0] = headColumn;
+        rows[0] = headRow;
+        for (int i = 1; i < length; i++) {
+            int cell = body[at(i)];
+            columns[i] = grid.column(cell);
+            rows[i] = grid.row(cell);
+        }
+    }
+
+    // Saves a head-first copy of the body and leaves the live snake alone, it may be moving on a worker meanwhile
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        int[] savedX = x;
+        int[] savedY = y;
+        if (!bodyInArrays) {
+            savedX = new int[Math.max(x.length, length)];
+            savedY = new int[savedX.length];
+            decode(savedX, savedY);
+        }
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("boardWidth", boardWidth);
+        fields.put("boardHeight", boardHeight);
+        fields.put("max_length", max_length);
+        fields.put("rand_pos_x", rand_pos_x);
+        fields.put("rand_pos_y", rand_pos_y);
+        fields.put("dotSize", dotSize);
+        fields.put("appleToEat", appleToEat);
+        fields.put("length", length);
+        fields.put("x", savedX);
+        fields.put("y", savedY);
+        fields.put("cells", cells);
+        fields.put("snakeScore", snakeScore);
+        fields.put("lifetime", lifetime);
+        fields.put("timeLeft", timeLeft);
+        fields.put("maxLife", maxLife);
+        fields.put("lifeForApple", lifeForApple);
+        fields.put("fitness", fitness);
+        fields.put("inGame", inGame);
+        fields.put("startingDirection", startingDirection);
+        fields.put("direction", direction);
+        fields.put("brain", brain);
+        fields.put("showIt", showIt);
+        fields.put("humanPlaying", humanPlaying);
+        fields.put("delay", delay);
+        fields.put("foodList", foodList);
+        fields.put("foodIterate", foodIterate);
+        fields.put("bestSnake", bestSnake);
+        fields.put("wallCollide", wallCollide);
+        fields.put("bodyCollide", bodyCollide);
+        fields.put("hidden_layers", hidden_layers);
+        fields.put("hidden_nodes", hidden_nodes);
+        fields.put("mutationRate", mutationRate);
+        fields.put("input_count", input_count);
+        fields.put("output_count", output_count);
+        fields.put("look_count", look_count);
+        fields.put("vision", vision);
+        fields.put("decision", decision);
+        fields.put("startingPosition", startingPosition);
+        fields.put("walls", walls);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (!cells) {
+            for (int i = 0; i < x.length; i++) {
+                x[i] /= dotSize;
+                y[i] /= dotSize;
+            }
+            if (appleToEat != null) {
+                appleToEat.toCells(dotSize);
+            }
+            if (foodList != null) {
+                for (Apple apple : foodList) {
+                    apple.toCells(dotSize);
+                }
+            }
+            cells = true;
+        }
+        bodyInArrays = true;
+    }
+
     public void eat(Apple newAppleToEat) {
         this.appleToEat = newAppleToEat;
         this.length++;
@@ -178,56 +409,21 @@ public class Snake implements Serializable {
     }
 
     private void randomApple() {
-        Set<Long> occupied = new HashSet<Long>();
-
-        for (int i = 0; i < length; i++) {
-            occupied.add(posKey(x[i] / dotSize, y[i] / dotSize));
-        }
-
-        if (walls != null && !walls.isEmpty()) {
-            for (Wall wall : walls) {
-                occupied.add(posKey(wall.getX() / dotSize, wall.getY() / dotSize));
-            }
-        }
-
-        int totalCells = rand_pos_x * rand_pos_y;
-        int freeCells = totalCells - occupied.size();
-
-        if (freeCells > 0) {
-            int target = (int) (Math.random() * freeCells);
-            int count = 0;
-            for (int bx = 0; bx < rand_pos_x; bx++) {
-                for (int by = 0; by < rand_pos_y; by++) {
-                    if (!occupied.contains(posKey(bx, by))) {
-                        if (count == target) {
-                            appleToEat = new Apple(bx * dotSize, by * dotSize);
-                            foodList.add(appleToEat);
-                            return;
-                        }
-                        count++;
-                    }
-                }
-            }
+        BoardGrid grid = board();
+        if (bodyInArrays || !bodyCellsValid || bodyCellsBoard != grid) {
+            // Not inside move(), which keeps the sets valid while a grown snake's length is already ahead of them
+            bodyCells();
+        }
+        if (freeCount > 0) {
+            // Uniform over the cells free of walls, body and head
+            int cell = FreeCells.sample(freeCells, 0, freeCount, nextRandom());
+            appleToEat = new Apple(grid.column(cell), grid.row(cell));
+        } else {
+            appleToEat = randomizeApple();
         }
-
-        appleToEat = randomizeApple();
         foodList.add(appleToEat);
     }
 
-    private static long posKey(int x, int y) {
-        return ((long) x << 32) | (y & 0xFFFFFFFFL);
-    }
-
-    public List<XY> populate(int maxX, int maxY) {
-        List<XY> boardTable = new ArrayList<>();
-        for (int x = 0; x < maxX; x++) {
-            for (int y = 0; y < maxY; y++) {
-                boardTable.add(new XY(x, y));
-            }
-        }
-        return boardTable;
-    }
-
     public class XY implements Serializable {
         private int x;
         private int y;
@@ -268,79 +464,19 @@ public class Snake implements Serializable {
     }
 
     private Apple randomizeApple() {
-        int r = (int) (Math.random() * rand_pos_x);
-        int apple_x = ((r * dotSize));
-
-        r = (int) (Math.random() * rand_pos_y);
-        int apple_y = ((r * dotSize));
+        BoardGrid grid = board();
+        int apple_x = (int) (nextRandom() * grid.columns());
+        int apple_y = (int) (nextRandom() * grid.rows());
         return new Apple(apple_x, apple_y);
     }
 
-    public void doDrawing(Graphics g) {
-        if (inGame) {
-            if (showIt && appleToEat != null) {
-                g.setColor(Color.red);
-                g.fillRect(appleToEat.getApple_x(), appleToEat.getApple_y(), dotSize - 1, dotSize - 1);
-                g.setColor(Color.black);
-                g.drawRect(appleToEat.getApple_x(), appleToEat.getApple_y(), dotSize, dotSize);
-            }
-
-            for (int z = length - 1; z >= 0; z--) {
-                if (z == 0) {
-                    //head
-                    if (this.showIt) {
-                        g.setColor(brain.tailColor());
-                        g.fillRect(x[z], y[z], dotSize - 1, dotSize - 1);
-                        g.setColor(Color.yellow);
-                        g.drawRect(x[z], y[z], dotSize, dotSize);
-                    }
-                } else {
-                    //tail
-                    if (this.showIt) {
-//                        brain.
-                        g.setColor(brain.tailColor());
-                        g.fillRect(x[z], y[z], dotSize - 1, dotSize - 1);
-                        g.setColor(Color.white);
-                        g.drawRect(x[z], y[z], dotSize, dotSize);
-
-                    }
-
-                }
-            }
-        } else {
-            if (bestSnake) {
-                for (int z = 0; z < length; z++) {
-                    if (z == 0) {
-                        //head
-                        if (this.showIt) {
-                            g.setColor(Color.CYAN);
-                            g.fillRect(x[z], y[z], dotSize - 1, dotSize - 1);
-                            g.setColor(Color.black);
-                            g.drawRect(x[z], y[z], dotSize, dotSize);
-                        }
-                    } else {
-                        //tail
-                        if (this.showIt) {
-                            g.setColor(Color.gray);
-                            g.fillRect(x[z], y[z], dotSize - 1, dotSize - 1);
-                            g.setColor(Color.black);
-                            g.drawRect(x[z], y[z], dotSize, dotSize);
-                        }
-
-                    }
-                }
-            }
-            //TODO: What should it do when it's game over for him
-        }
-    }
-
     /**
      * Checks if pl.morph.ai.snake is going to eat apple
      */
     public void checkApple() {
-
+        readBody();
         // Snake head collided with apple
-        if ((x[0] == appleToEat.getApple_x()) && (y[0] == appleToEat.getApple_y())) {
+        if ((headColumn == appleToEat.getApple_x()) && (headRow == appleToEat.getApple_y())) {
             increaseLifeSpan();
             snakeScore.addScore();
             if (bestSnake && scores != null) {
@@ -356,9 +492,9 @@ public class Snake implements Serializable {
      * Checks if pl.morph.ai.snake is going to eat apple
      */
     public void checkApple(Scores scores) {
-
+        readBody();
         // Snake head collided with apple
-        if ((x[0] == appleToEat.getApple_x()) && (y[0] == appleToEat.getApple_y())) {
+        if ((headColumn == appleToEat.getApple_x()) && (headRow == appleToEat.getApple_y())) {
             increaseLifeSpan();
             scores.addPoint();
             length++;
@@ -394,10 +530,9 @@ public class Snake implements Serializable {
     }
 
     public Snake crossover(Snake parent) {  //crossover the pl.morph.ai.snake with another pl.morph.ai.snake
-        Snake child = new Snake(boardWidth, boardHeight, delay, humanPlaying, null, dotSize, walls);
+        Snake child = new Snake(boardWidth, boardHeight, delay, humanPlaying, null, dotSize, walls, brain.crossover(parent.brain));
         child.startingDirection = Direction.random();
         child.direction = child.startingDirection;
-        child.brain = brain.crossover(parent.brain);
         return child;
     }
 
@@ -415,16 +550,15 @@ public class Snake implements Serializable {
     }
 
     public void think() {
-        decision = brain.output(vision);
-        int maxIndex = 0;
-        double max = 0;
-        for (int i = 0; i < decision.length; i++) {
-            if (decision[i] > max) {
-                max = decision[i];
-                maxIndex = i;
-            }
-        }
-        checkDirection(maxIndex);
+        act(brain.decide(vision));
+    }
+
+    /**
+     * Turns according to a decision (0 left, 1 right, 2 forward) made by {@link #think()}
+     * or by a batched inference pass over the whole population.
+     */
+    public void act(int decision) {
+        checkDirection(decision);
     }
 
 
@@ -434,38 +568,51 @@ public class Snake implements Serializable {
                 lifetime++;
                 timeLeft--;
             }
-            if (foodCollide(x[0], y[0])) {
+            int[] cells = bodyCells();
+            BoardGrid grid = bodyCellsBoard;
+            int oldLength = length;
+            int oldHead = body[head];
+            if (foodCollide(headColumn, headRow)) {
                 checkApple();
             }
             if (timeLeft <= 0) {
                 inGame = false;
             }
-            for (int z = length; z > 0; z--) {
-
-                x[z] = x[(z - 1)];
-                y[z] = y[(z - 1)];
-
+            int oldTail = body[at(oldLength - 1)];
+            // The head steps into the slot before the old one, the rest of the body keeps its slots
+            head = head == 0 ? body.length - 1 : head - 1;
+            // The old head joins the body, the old tail leaves it unless an apple was eaten
+            occupy(oldHead, 1);
+            if (length == oldLength) {
+                occupy(oldTail, -1);
             }
+            bodyCellsLength = length;
             switch (direction) {
                 case LEFT:
-                    x[0] -= dotSize;
+                    headColumn--;
                     break;
                 case RIGHT:
-                    x[0] += dotSize;
+                    headColumn++;
                     break;
                 case UP:
-                    y[0] -= dotSize;
+                    headRow--;
                     break;
                 case DOWN:
-                    y[0] += dotSize;
+                    headRow++;
                     break;
 
             }
 
-            if (wallCollide(x[0], y[0])) {
+            int headCell = grid.cell(headColumn, headRow);
+            body[head] = headCell;
+            refreshFree(oldHead, headCell);
+            refreshFree(oldTail, headCell);
+            refreshFree(headCell, headCell);
+
+            if (headCell < 0 || grid.isWallCell(headCell)) {
                 wallCollide = true;
                 inGame = false;
-            } else if (bodyCollide(x[0], y[0])) {
+            } else if (cells[headCell] > 0) {
                 bodyCollide = true;
                 inGame = false;
             } else if (timeLeft <= 0 && !humanPlaying) {
@@ -479,114 +626,138 @@ public class Snake implements Serializable {
         return snakeScore.getScore();
     }
 
+    public long getLifetime() {
+        return lifetime;
+    }
+
     public void look() {  //look in all 8 directions and check for food, body and wall
-        vision = new double[input_count];
+        bodyCells();
         vision[0] = direction.value();
         vision[1] = tailDirection().value();
-        double[] temp = lookInDirection(direction.look(dotSize, Direction.LEFT)); // LEFT
-        vision[2] = temp[0];
-        vision[3] = temp[1];
-        vision[4] = temp[2];
-        temp = lookInDirection(direction.look(dotSize, Direction.UP)); // TOP
-        vision[5] = temp[0];
-        vision[6] = temp[1];
-        vision[7] = temp[2];
-        temp = lookInDirection(direction.look(dotSize, Direction.RIGHT)); // RIGHT
-        vision[8] = temp[0];
-        vision[9] = temp[1];
-        vision[10] = temp[2];
-
-        temp = lookInDirection(direction.look(dotSize, Direction.DOWN)); // DOWN
-        vision[11] = temp[0];
-        vision[12] = temp[1];
-        vision[13] = temp[2];
-
-        temp = lookInDirection(direction.look(dotSize, Direction.TOP_LEFT));  // LEFT TOP
-        vision[14] = temp[0];
-        vision[15] = temp[1];
-        vision[16] = temp[2];
-
-        temp = lookInDirection(direction.look(dotSize, Direction.TOP_RIGHT));  // RIGHT TOP
-        vision[17] = temp[0];
-        vision[18] = temp[1];
-        vision[19] = temp[2];
-        temp = lookInDirection(direction.look(dotSize, Direction.DOWN_RIGHT)); // RIGHT DOWN
-        vision[20] = temp[0];
-        vision[21] = temp[1];
-        vision[22] = temp[2];
-        temp = lookInDirection(direction.look(dotSize, Direction.DOWN_LEFT)); // LEFT DOWN
-        vision[23] = temp[0];
-        vision[24] = temp[1];
-        vision[25] = temp[2];
+        for (int r = 0; r < LOOK_ORDER.length; r++) {
+            int[] ray = direction.ray(LOOK_ORDER[r]);
+            lookInDirection(ray[0], ray[1], vision, 2 + r * look_count);
+        }
     }
 
     double[] lookInDirection(int[] XY) {  //look in a direction and check for food, body and wall
         double look[] = new double[look_count];
+        lookInDirection(XY[0], XY[1], look, 0);
+        return look;
+    }
 
-        int X = XY[0];
-        int Y = XY[1];
-
-        int head_x = x[0];
-        int head_y = y[0];
-
-        float distance = 0;
-        boolean foodFound = false;
-        boolean bodyFound = false;
-        head_x += X;
-        head_y += Y;
-        distance += 1;
-        while (!wallCollide(head_x, head_y)) {
-            if (!foodFound && foodCollide(head_x, head_y)) {
-                foodFound = true;
-                look[0] = 1.0 / distance;
+    // Writes food, body and wall of the ray with steps of (X, Y) cells to look[offset..offset + 2]
+    private void lookInDirection(int X, int Y, double[] look, int offset) {
+        int[] cells = bodyCells();
+        BoardGrid grid = bodyCellsBoard;
+        int start = body[head];
+        int ray = grid.direction(X, Y);
+        look[offset] = 0;
+        look[offset + 1] = 0;
+        if (start < 0 || ray < 0) {
+            // A head off the board sees nothing but the edge
+            look[offset + 2] = 1;
+            return;
+        }
+
+        int wall = grid.wallDistance(start, ray);
+        if (appleToEat != null) {
+            // The apple is seen if it is a whole number of steps along the ray, in front of the wall
+            int dx = appleToEat.getApple_x() - headColumn;
+            int dy = appleToEat.getApple_y() - headRow;
+            int steps = X != 0 ? dx * X : dy * Y;
+            if (steps > 0 && steps < wall && steps * X == dx && steps * Y == dy) {
+                look[offset] = grid.reciprocal(steps);
             }
-            if (!bodyFound && bodyCollide(head_x, head_y)) {
-                bodyFound = true;
-                look[1] = 1.0 / distance;
+        }
+        if (length > 1) {
+            int step = grid.step(ray);
+            int cell = start;
+            for (int steps = 1; steps < wall; steps++) {
+                cell += step;
+                if (cells[cell] > 0) {
+                    look[offset + 1] = grid.reciprocal(steps);
+                    break;
+                }
             }
-
-            head_x += X;
-            head_y += Y;
-            distance += 1;
         }
+        look[offset + 2] = grid.reciprocal(wall);
+    }
 
-        look[2] = 1.0 / distance;
+    boolean bodyCollide(int X, int Y) {  //check if a cell collides with the snakes body
+        int[] cells = bodyCells();
+        int cell = bodyCellsBoard.cell(X, Y);
+        return cell >= 0 && cells[cell] > 0;
+    }
 
-        return look;
+    private BoardGrid board() {
+        BoardGrid grid = board;
+        if (grid == null) {
+            grid = BoardGrid.of(boardWidth / dotSize, boardHeight / dotSize, walls);
+            board = grid;
+        }
+        return grid;
     }
 
-    boolean bodyCollide(double X, double Y) {  //check if a position collides with the snakes body
-        for (int i = 1; i < length; i++) {
-            if (X == x[i] && Y == y[i]) {
-                return true;
+    // Body occupancy, rebuilt from the ring when it may be out of step with it
+    private int[] bodyCells() {
+        readBody();
+        BoardGrid grid = board();
+        if (bodyCellsBoard != grid || !bodyCellsValid || bodyCellsLength != length) {
+            if (bodyCells == null || bodyCells.length != grid.size()) {
+                bodyCells = new int[grid.size()];
+            } else {
+                Arrays.fill(bodyCells, 0);
+            }
+            bodyCellsBoard = grid;
+            for (int i = 1; i < length; i++) {
+                occupy(body[at(i)], 1);
+            }
+            bodyCellsLength = length;
+            bodyCellsValid = true;
+
+            if (freeCells == null || freeCells.length != grid.size()) {
+                freeCells = new int[grid.size()];
+                freeSlots = new int[grid.size()];
+            }
+            freeCount = FreeCells.fill(freeCells, freeSlots, 0, grid.size());
+            int headCell = body[head];
+            for (int cell = 0; cell < grid.size(); cell++) {
+                refreshFree(cell, headCell);
             }
         }
-        return false;
+        return bodyCells;
     }
 
-    boolean foodCollide(double X, double Y) {  //check if a position collides with the food
-        if (appleToEat != null && X == appleToEat.getApple_x() && Y == appleToEat.getApple_y()) {
-            return true;
+    // Brings one cell's place in the free set in line with the walls, the body and the head
+    private void refreshFree(int cell, int headCell) {
+        if (cell < 0) {
+            return;
+        }
+        if (cell == headCell || bodyCells[cell] > 0 || bodyCellsBoard.isWallCell(cell)) {
+            freeCount = FreeCells.occupy(freeCells, freeSlots, 0, freeCount, cell);
+        } else {
+            freeCount = FreeCells.release(freeCells, freeSlots, 0, freeCount, cell);
         }
-        return false;
     }
 
-    boolean wallCollide(double X, double Y) {  //check if a position collides with the wall
-        if (X >= boardWidth || X < 0 || Y >= boardHeight || Y < 0) {
-            return true;
+    private void occupy(int cell, int segments) {
+        if (cell >= 0) {
+            bodyCells[cell] += segments;
         }
+    }
 
-        if (walls != null && !walls.isEmpty()) {
-            for (Wall wall : walls) {
-                if (X == wall.getX() && Y == wall.getY()) {
-                    return true;
-                }
-            }
+    boolean foodCollide(int X, int Y) {  //check if a cell collides with the food
+        if (appleToEat != null && X == appleToEat.getApple_x() && Y == appleToEat.getApple_y()) {
+            return true;
         }
-
         return false;
     }
 
+    boolean wallCollide(int X, int Y) {  //check if a cell collides with the wall
+        return board().isWall(X, Y);
+    }
+
     public double calculateDistanceBetweenPoints(
             double x1,
             double y1,
@@ -613,6 +784,10 @@ public class Snake implements Serializable {
         return this;
     }
 
+    public double[] getVision() {
+        return vision;
+    }
+
     public NeuralNetwork getBrain() {
         return brain;
     }
@@ -643,50 +818,18 @@ public class Snake implements Serializable {
 //    }
 
     private void checkDirection(int value) {
-        if (value == 0) { // LEFT
-            switch (direction) {
-                case LEFT:
-                    direction = Direction.DOWN;
-                    break;
-                case DOWN:
-                    direction = Direction.RIGHT;
-                    break;
-                case UP:
-                    direction = Direction.LEFT;
-                    break;
-                case RIGHT:
-                    direction = Direction.UP;
-                    break;
-            }
-        } else if (value == 1) { // RIGHT
-            switch (direction) {
-                case LEFT:
-                    direction = Direction.UP;
-                    break;
-                case DOWN:
-                    direction = Direction.LEFT;
-                    break;
-                case UP:
-                    direction = Direction.RIGHT;
-                    break;
-                case RIGHT:
-                    direction = Direction.DOWN;
-                    break;
-            }
-        } else if (value == 2) { // MOVE FORWARD
-        }
+        direction = direction.turn(value);
     }
 
     private Direction tailDirection() {
-        int xLast = x[length - 1];
-        int yLast = y[length - 1];
-
         if (length < 2) {
             return direction;
         }
 
-        int xBeforeLast = x[length - 2];
-        int yBeforeLast = y[length - 2];
+        int xLast = getColumn(length - 1);
+        int yLast = getRow(length - 1);
+        int xBeforeLast = getColumn(length - 2);
+        int yBeforeLast = getRow(length - 2);
 
         if (xLast == xBeforeLast) {
             if (yBeforeLast > yLast) {
@@ -710,6 +853,10 @@ public class Snake implements Serializable {
         this.showIt = showIt;
     }
 
+    public boolean isShowIt() {
+        return showIt;
+    }
+
     public double getMutationRate() {
         return mutationRate;
     }
@@ -750,18 +897,57 @@ public class Snake implements Serializable {
         this.foodList = foodList;
     }
 
+    /**
+     * Changes the cell size the board is divided by, the body keeps its columns and rows.
+     */
     public void setDotSize(int dotSize) {
+        if (bodyInArrays) {
+            this.dotSize = dotSize;
+            this.board = null;
+            return;
+        }
+        // The ring's cell numbers depend on the board width in cells, they are numbered again on the new board
+        int[] columns = new int[length];
+        int[] rows = new int[length];
+        decode(columns, rows);
         this.dotSize = dotSize;
+        this.board = null;
+        encode(columns, rows);
     }
 
     public void setWalls(List<Wall> walls) {
         this.walls = walls;
+        this.board = null;
     }
 
     public void setStartingPosition(XY startingPosition) {
         this.startingPosition = startingPosition;
-        x[0] = startingPosition.getX() * dotSize;
-        y[0] = startingPosition.getY() * dotSize;
+        readBody();
+        headColumn = startingPosition.getX();
+        headRow = startingPosition.getY();
+        body[head] = board().cell(headColumn, headRow);
+        bodyCellsValid = false;
+    }
+
+    /**
+     * Starts the snake at a random cell that is not a wall.
+     */
+    public void setRandomStartingPosition() {
+        BoardGrid grid = board();
+        int cell = grid.randomOpenCell(nextRandom());
+        setStartingPosition(new XY(grid.column(cell), grid.row(cell)));
+    }
+
+    /**
+     * Draws starting cells and apples from {@code random}, so a snake started from the same seed plays the
+     * same game. Null goes back to {@link Math#random()}.
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    private double nextRandom() {
+        return random != null ? random.nextDouble() : Math.random();
     }
 
     public XY getStartingPosition() {
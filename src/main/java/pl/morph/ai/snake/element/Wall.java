@@ -1,8 +1,12 @@
 package pl.morph.ai.snake.element;
 
-import java.awt.*;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
+/**
+ * Wall at a cell of the board, its position and size in cells.
+ */
 public class Wall implements Serializable {
     private static final long serialVersionUID = 1;
 
@@ -10,12 +14,26 @@ public class Wall implements Serializable {
     private int y;
     private int width;
     private int height;
+    // False in walls saved while positions were pixels
+    private boolean cells = true;
 
-    public Wall(int x, int y, int dotSize) {
+    public Wall(int x, int y) {
         this.x = x;
         this.y = y;
-        this.width = dotSize;
-        this.height = dotSize;
+        this.width = 1;
+        this.height = 1;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (!cells) {
+            // A pixel wall was one cell of dotSize pixels
+            x /= width;
+            y /= height;
+            width = 1;
+            height = 1;
+            cells = true;
+        }
     }
 
     public int getX() {
@@ -49,11 +67,4 @@ public class Wall implements Serializable {
     public void setHeight(int height) {
         this.height = height;
     }
-
-    public void doDrawing(Graphics g) {
-        g.setColor(Color.gray);
-        g.fillRect(x, y, width - 1, height - 1);
-        g.setColor(Color.black);
-        g.drawRect(x, y, width, height);
-    }
 }
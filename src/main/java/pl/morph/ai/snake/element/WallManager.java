@@ -14,11 +14,11 @@ public class WallManager {
 
     }
 
-    private static List<Wall> addInLine(int x, int y, int dotSize, int howMuchSteps, int rows) {
+    private static List<Wall> addInLine(int x, int y, int howMuchSteps, int rows) {
         List<Wall> walls = new ArrayList<Wall>();
         for (int i = 1; i <= howMuchSteps; i++) {
             for (int j = 1; j <= rows; j++) {
-                walls.add(new Wall(x + dotSize * i, y + dotSize * j, dotSize));
+                walls.add(new Wall(x + i, y + j));
             }
         }
         return walls;
@@ -0,0 +1,148 @@
+package pl.morph.ai.snake.engine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Supervised training of a {@link Precision#DOUBLE} {@link NeuralNetwork} on labelled inputs, a label being the index
+ * of the wanted output. Mini-batch backpropagation of the softmax cross-entropy loss through the ReLU hidden layers,
+ * the weights are updated with Adam.
+ */
+public class BackpropTrainer {
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    private final double learningRate;
+    private final int batchSize;
+    private final Random random;
+
+    public BackpropTrainer(double learningRate, int batchSize, long seed) {
+        this.learningRate = learningRate;
+        this.batchSize = batchSize;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Runs {@code epochs} passes over the samples in random order, {@code labels[k]} being the wanted output
+     * for {@code inputs.get(k)}. The network is trained in place.
+     *
+     * @return mean loss over the last epoch
+     */
+    public double train(NeuralNetwork network, List<double[]> inputs, int[] labels, int epochs) {
+        if (network.getPrecision() != Precision.DOUBLE) {
+            throw new IllegalStateException("Network is in " + network.getPrecision() + " precision");
+        }
+        Matrix[] weights = network.weights;
+        int layers = weights.length;
+        double[][] gradients = new double[layers][];
+        double[][] moments = new double[layers][];
+        double[][] velocities = new double[layers][];
+        // activations[l] is the input of layer l, the last entry holds the softmax output
+        double[][] activations = new double[layers + 1][];
+        double[][] deltas = new double[layers][];
+        for (int l = 0; l < layers; l++) {
+            gradients[l] = new double[weights[l].size()];
+            moments[l] = new double[weights[l].size()];
+            velocities[l] = new double[weights[l].size()];
+            activations[l + 1] = new double[weights[l].rows];
+            deltas[l] = new double[weights[l].rows];
+        }
+
+        int[] order = new int[inputs.size()];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        long step = 0;
+        double loss = 0;
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            shuffle(order);
+            loss = 0;
+            for (int batchStart = 0; batchStart < order.length; batchStart += batchSize) {
+                int batchEnd = Math.min(batchStart + batchSize, order.length);
+                for (double[] gradient : gradients) {
+                    Arrays.fill(gradient, 0);
+                }
+                for (int k = batchStart; k < batchEnd; k++) {
+                    activations[0] = inputs.get(order[k]);
+                    loss += backpropagate(weights, activations, deltas, gradients, labels[order[k]]);
+                }
+                update(weights, gradients, moments, velocities, batchEnd - batchStart, ++step);
+            }
+            loss /= Math.max(1, order.length);
+        }
+        return loss;
+    }
+
+    // Adds the gradient of one sample to gradients, returns its loss
+    private static double backpropagate(Matrix[] weights, double[][] activations, double[][] deltas,
+                                        double[][] gradients, int label) {
+        int layers = weights.length;
+        for (int l = 0; l < layers; l++) {
+            weights[l].feedForward(activations[l], 0, activations[l + 1], 0, l < layers - 1);
+        }
+        double[] probabilities = activations[layers];
+        Matrix.softmax(probabilities, 0, probabilities, probabilities.length);
+        double loss = -Math.log(Math.max(probabilities[label], 1e-300));
+
+        // Softmax with cross-entropy: the error of the logits is the output minus the one-hot label
+        double[] delta = deltas[layers - 1];
+        for (int i = 0; i < delta.length; i++) {
+            delta[i] = probabilities[i] - (i == label ? 1 : 0);
+        }
+        for (int l = layers - 1; l >= 0; l--) {
+            Matrix w = weights[l];
+            double[] in = activations[l];
+            double[] gradient = gradients[l];
+            delta = deltas[l];
+            int inputs = w.cols - 1;
+            for (int r = 0; r < w.rows; r++) {
+                int row = r * w.cols;
+                for (int k = 0; k < inputs; k++) {
+                    gradient[row + k] += delta[r] * in[k];
+                }
+                gradient[row + inputs] += delta[r];
+            }
+            if (l > 0) {
+                double[] previous = deltas[l - 1];
+                for (int k = 0; k < inputs; k++) {
+                    double sum = 0;
+                    for (int r = 0; r < w.rows; r++) {
+                        sum += w.data[w.offset + r * w.cols + k] * delta[r];
+                    }
+                    // ReLU passes the error only where it was active
+                    previous[k] = in[k] > 0 ? sum : 0;
+                }
+            }
+        }
+        return loss;
+    }
+
+    private void update(Matrix[] weights, double[][] gradients, double[][] moments, double[][] velocities,
+                        int samples, long step) {
+        double correction1 = 1 - Math.pow(BETA1, step);
+        double correction2 = 1 - Math.pow(BETA2, step);
+        for (int l = 0; l < weights.length; l++) {
+            Matrix w = weights[l];
+            double[] gradient = gradients[l];
+            double[] moment = moments[l];
+            double[] velocity = velocities[l];
+            for (int i = 0; i < gradient.length; i++) {
+                double g = gradient[i] / samples;
+                moment[i] = BETA1 * moment[i] + (1 - BETA1) * g;
+                velocity[i] = BETA2 * velocity[i] + (1 - BETA2) * g * g;
+                w.data[w.offset + i] -= learningRate * (moment[i] / correction1) / (Math.sqrt(velocity[i] / correction2) + EPSILON);
+            }
+        }
+    }
+
+    private void shuffle(int[] order) {
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package pl.morph.ai.snake.engine;
+
+/**
+ * Inner loops of the forward pass. Weights are row-major with the bias in the last column of every row,
+ * see {@link Matrix#feedForward(double[], int, double[], int, boolean)}.
+ * <p>
+ * Kernels may round differently: {@link ScalarDenseKernel} sums every row left to right, the Vector API kernel
+ * sums lane-wise with FMA and reduces the lanes at the end. Their outputs differ in the last bits, so a decision
+ * taken from two nearly tied outputs can differ between kernels.
+ */
+interface DenseKernel {
+
+    /**
+     * {@code out[i] = relu?(w[i] . in + bias[i])} for the {@code rows x cols} block of {@code w} starting at {@code wOffset}.
+     */
+    void dense(double[] w, int wOffset, int rows, int cols,
+               double[] in, int inOffset, double[] out, int outOffset, boolean relu);
+
+    void dense(float[] w, int wOffset, int rows, int cols,
+               float[] in, int inOffset, float[] out, int outOffset, boolean relu);
+
+    /**
+     * The same layer applied to {@code count} inputs stored feature-major: value {@code k} of input {@code b} is
+     * {@code in[inOffset + k * stride + b]} and output {@code i} of input {@code b} goes to
+     * {@code out[outOffset + i * stride + b]}. In every kernel each output is summed left to right with separate
+     * multiply and add, exactly like {@link ScalarDenseKernel#dense}; the vector {@code dense} of the same kernel
+     * may round differently.
+     */
+    void denseBatch(double[] w, int wOffset, int rows, int cols, double[] in, int inOffset,
+                    double[] out, int outOffset, int stride, int count, boolean relu);
+
+    void denseBatch(float[] w, int wOffset, int rows, int cols, float[] in, int inOffset,
+                    float[] out, int outOffset, int stride, int count, boolean relu);
+
+    /**
+     * Index of the largest of {@code length} values starting at {@code offset}, the first one on ties.
+     */
+    int argmax(double[] values, int offset, int length);
+
+    int argmax(float[] values, int offset, int length);
+
+    String name();
+}
@@ -0,0 +1,50 @@
+package pl.morph.ai.snake.engine;
+
+/**
+ * Picks the {@link DenseKernel} once at startup.
+ * <p>
+ * {@code VectorDenseKernel} only exists in the Java 17 part of the multi-release jar and needs
+ * {@code --add-modules jdk.incubator.vector}. On older runtimes, or without the module, loading it fails
+ * and the scalar kernel is used. {@code -Dsnake.kernel=scalar} forces the scalar kernel.
+ */
+final class DenseKernels {
+    static final String VECTOR_KERNEL = "pl.morph.ai.snake.engine.VectorDenseKernel";
+
+    private static final DenseKernel SCALAR = new ScalarDenseKernel();
+    private static final DenseKernel ACTIVE = select();
+
+    private DenseKernels() {
+    }
+
+    static DenseKernel get() {
+        return ACTIVE;
+    }
+
+    static DenseKernel scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * The Vector API kernel, or null when this runtime cannot load it.
+     */
+    static DenseKernel vector() {
+        try {
+            return (DenseKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (Throwable e) {
+            // ClassNotFoundException before Java 17, NoClassDefFoundError without the incubator module
+            return null;
+        }
+    }
+
+    private static DenseKernel select() {
+        DenseKernel kernel = null;
+        if (!"scalar".equalsIgnoreCase(System.getProperty("snake.kernel"))) {
+            kernel = vector();
+        }
+        if (kernel == null) {
+            kernel = SCALAR;
+        }
+        System.out.println("Dense kernel: " + kernel.name());
+        return kernel;
+    }
+}
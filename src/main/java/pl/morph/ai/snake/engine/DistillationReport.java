@@ -0,0 +1,75 @@
+package pl.morph.ai.snake.engine;
+
+import pl.morph.ai.snake.element.Snake;
+
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Distills the best snake of a save into a smaller student network: the teacher plays games, every vision it saw is
+ * labelled with its decision and the student learns these pairs with {@link BackpropTrainer}. The student is saved
+ * as a population of one snake that loads like any other save, then compared with the teacher on new games.
+ * <p>
+ * Usage: {@code java -cp SnakeAi.jar pl.morph.ai.snake.engine.DistillationReport best.ser student.ser [hiddenNodes] [hiddenLayers] [episodes] [epochs]}
+ */
+public class DistillationReport {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: DistillationReport <snakes.ser> <student.ser> [hiddenNodes] [hiddenLayers] [episodes] [epochs]");
+            return;
+        }
+        int hiddenNodes = args.length > 2 ? Integer.parseInt(args[2]) : 12;
+        int hiddenLayers = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        int episodes = args.length > 4 ? Integer.parseInt(args[4]) : 200;
+        int epochs = args.length > 5 ? Integer.parseInt(args[5]) : 30;
+        if (hiddenNodes <= 0 || hiddenLayers <= 0 || episodes <= 0 || epochs <= 0) {
+            System.out.println("hiddenNodes, hiddenLayers, episodes and epochs must be positive: "
+                    + hiddenNodes + ", " + hiddenLayers + ", " + episodes + ", " + epochs);
+            return;
+        }
+
+        NeuralNetwork teacher = PolicyComparison.loadBestBrain(args[0]).toPrecision(Precision.DOUBLE);
+        EpisodeRunner runner = new EpisodeRunner();
+        List<double[]> visions = new ArrayList<double[]>();
+        for (int e = 0; e < episodes; e++) {
+            runner.play(teacher, teacher, visions);
+        }
+        if (visions.isEmpty()) {
+            System.out.println("The teacher made no decision in " + episodes + " episodes, nothing to learn from");
+            return;
+        }
+        int[] labels = teacher.decide(visions.toArray(new double[visions.size()][]));
+
+        NeuralNetwork student = new NeuralNetwork(teacher.iNodes, hiddenNodes, teacher.oNodes, hiddenLayers);
+        double loss = new BackpropTrainer(0.001, 64, 1).train(student, visions, labels, epochs);
+
+        List<Snake> population = new ArrayList<Snake>();
+        population.add(runner.newSnake(student));
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(args[1]))) {
+            out.writeObject(population);
+        }
+
+        // Agreement is measured on games the student was not trained on
+        List<double[]> unseen = new ArrayList<double[]>();
+        long teacherScore = 0;
+        long studentScore = 0;
+        for (int e = 0; e < episodes; e++) {
+            teacherScore += runner.play(teacher, teacher, unseen);
+            studentScore += runner.play(student, student, null);
+        }
+
+        int agreed = PolicyComparison.agreement(teacher, student, unseen);
+        String share = unseen.isEmpty() ? "no decisions" : String.format("%.2f%%", 100.0 * agreed / unseen.size());
+        System.out.println("Teacher:      " + teacher.hLayers + " x " + teacher.hNodes + " hidden, " + PolicyComparison.sizeInBytes(teacher) + " bytes");
+        System.out.println("Student:      " + hiddenLayers + " x " + hiddenNodes + " hidden, " + PolicyComparison.sizeInBytes(student) + " bytes, saved to " + args[1]);
+        System.out.println(String.format("Training:     %d samples, %d epochs, final loss %.4f", visions.size(), epochs, loss));
+        System.out.println("Agreement:    " + agreed + " / " + unseen.size() +  " (" + share + ")");
+        System.out.println(String.format("Mean score:   %.2f teacher, %.2f student over %d episodes",
+                (double) teacherScore / episodes, (double) studentScore / episodes, episodes));
+        System.out.println(String.format("Decisions/s:  %.0f teacher, %.0f student",
+                PolicyComparison.decisionsPerSecond(teacher, unseen), PolicyComparison.decisionsPerSecond(student, unseen)));
+    }
+}
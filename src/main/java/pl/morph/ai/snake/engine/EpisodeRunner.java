@@ -0,0 +1,106 @@
+package pl.morph.ai.snake.engine;
+
+import pl.morph.ai.snake.element.Snake;
+import pl.morph.ai.snake.element.Wall;
+import pl.morph.ai.snake.element.WallManager;
+
+import java.util.List;
+
+/**
+ * Plays single games outside of the {@link SimulationEngine}, for evaluating one trained snake over many episodes.
+ */
+public class EpisodeRunner {
+    private final int boardWidth;
+    private final int boardHeight;
+    private final int dotSize;
+    private final List<Wall> walls;
+
+    public EpisodeRunner() {
+        this(SimulationEngine.B_WIDTH, SimulationEngine.B_HEIGHT, 40);
+    }
+
+    public EpisodeRunner(int boardWidth, int boardHeight, int dotSize) {
+        this.boardWidth = boardWidth;
+        this.boardHeight = boardHeight;
+        this.dotSize = dotSize;
+        this.walls = WallManager.prepareWalls(dotSize, boardWidth, boardHeight);
+    }
+
+    /**
+     * New snake carrying {@code brain}, placed at a random cell with its first apple spawned.
+     */
+    public Snake newSnake(NeuralNetwork brain) {
+        Snake snake = new Snake(boardWidth, boardHeight, 0, false, null, dotSize, walls);
+        snake.setBrain(brain);
+        snake.setRandomStartingPosition();
+        snake.spawnApple();
+        return snake;
+    }
+
+    /**
+     * Plays a new game of {@code brain} until the snake dies, letting {@code policy} make every decision.
+     * When {@code recorded} is not null a copy of every vision the snake saw is appended to it.
+     *
+     * @return score of the game
+     */
+    public int play(NeuralNetwork brain, Policy policy, List<double[]> recorded) {
+        return play(newSnake(brain), policy, recorded);
+    }
+
+    public int play(Snake snake, Policy policy, List<double[]> recorded) {
+        while (snake.inGame) {
+            snake.look();
+            double[] vision = snake.getVision();
+            if (recorded != null) {
+                recorded.add(vision.clone());
+            }
+            snake.act(policy.decide(vision));
+            snake.move();
+        }
+        return snake.getScore();
+    }
+
+    /**
+     * Plays {@code episodes} new games of {@code brain} in lockstep: every tick all snakes still alive look,
+     * one batched {@link NeuralNetwork#decide(double[][], int[], int, int)} decides for all of them, then they move.
+     *
+     * @return score of every game
+     */
+    public int[] evaluate(NeuralNetwork brain, int episodes) {
+        Snake[] snakes = new Snake[episodes];
+        int[] alive = new int[episodes];
+        for (int i = 0; i < episodes; i++) {
+            snakes[i] = newSnake(brain);
+            alive[i] = i;
+        }
+        double[][] visions = new double[episodes][];
+        int[] decisions = new int[episodes];
+        int aliveCount = episodes;
+
+        while (aliveCount > 0) {
+            for (int k = 0; k < aliveCount; k++) {
+                Snake snake = snakes[alive[k]];
+                snake.look();
+                visions[k] = snake.getVision();
+            }
+            brain.decide(visions, decisions, 0, aliveCount);
+
+            int stillAlive = 0;
+            for (int k = 0; k < aliveCount; k++) {
+                Snake snake = snakes[alive[k]];
+                snake.act(decisions[k]);
+                snake.move();
+                if (snake.inGame) {
+                    alive[stillAlive++] = alive[k];
+                }
+            }
+            aliveCount = stillAlive;
+        }
+
+        int[] scores = new int[episodes];
+        for (int i = 0; i < episodes; i++) {
+            scores[i] = snakes[i].getScore();
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,214 @@
+package pl.morph.ai.snake.engine;
+
+import pl.morph.ai.snake.element.Snake;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Evolution strategies around one central network. Every generation is a set of antithetic pairs
+ * {@code center +- sigma * noise}, where a pair's noise is a slice of the shared {@link NoiseTable} named by its
+ * offset alone. After the episodes, fitness is replaced by centered ranks and every pair moves the center along
+ * its noise by the difference of its two ranks, so all evaluated snakes count. The sum over pairs is split between
+ * worker threads, each reducing its pairs into its own gradient before the partial gradients are added up.
+ * The center is updated with Adam.
+ */
+public class EvolutionStrategies implements Optimizer {
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    private final double sigma;
+    private final double learningRate;
+    private final Random random;
+    private final NoiseTable noise = NoiseTable.shared();
+    private final ExecutorService pool = ForkJoinPool.commonPool();
+    private final int workers = Runtime.getRuntime().availableProcessors();
+
+    private double[] center;
+    private double[] gradient;
+    private double[][] partials;
+    private double[] moment;
+    private double[] velocity;
+    private long step;
+
+    // Members of the generation being played: network -> member index, and the noise offset of every pair
+    private final Map<NeuralNetwork, Integer> members = new IdentityHashMap<NeuralNetwork, Integer>();
+    private int[] offsets = new int[0];
+    private int memberCount;
+
+    public EvolutionStrategies(double sigma, double learningRate, long seed) {
+        this.sigma = sigma;
+        this.learningRate = learningRate;
+        this.random = new Random(seed);
+    }
+
+    public void breed(List<Snake> generation, NeuralNetwork[] next, int from) {
+        double[] fitness = memberFitness(generation);
+        if (fitness == null) {
+            // First generation, a loaded population or a new topology: start around the best snake
+            start(generation.get(0).getBrain());
+        } else {
+            update(centeredRanks(fitness));
+        }
+        sample(next, from);
+    }
+
+    // Fitness of every member in member order, null unless the generation is exactly the one sampled last
+    private double[] memberFitness(List<Snake> generation) {
+        if (center == null || memberCount == 0) {
+            return null;
+        }
+        double[] fitness = new double[memberCount];
+        int found = 0;
+        for (Snake snake : generation) {
+            Integer member = members.get(snake.getBrain());
+            if (member != null) {
+                fitness[member] = snake.getFitness();
+                found++;
+            }
+        }
+        return found == memberCount ? fitness : null;
+    }
+
+    private void start(NeuralNetwork brain) {
+        int size = 0;
+        for (Matrix w : brain.weights) {
+            size += w.size();
+        }
+        center = new double[size];
+        int j = 0;
+        for (Matrix w : brain.weights) {
+            for (int i = 0; i < w.size(); i++) {
+                center[j++] = w.data != null ? w.data[w.offset + i] : w.floats[w.offset + i];
+            }
+        }
+        gradient = new double[size];
+        partials = new double[workers][size];
+        moment = new double[size];
+        velocity = new double[size];
+        step = 0;
+    }
+
+    // Ranks scaled to [-0.5, 0.5], the best member getting 0.5, so only the order of the fitness matters
+    static double[] centeredRanks(final double[] fitness) {
+        Integer[] order = new Integer[fitness.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(fitness[a], fitness[b]);
+            }
+        });
+        double[] ranks = new double[fitness.length];
+        for (int r = 0; r < order.length; r++) {
+            ranks[order[r]] = order.length == 1 ? 0 : (double) r / (order.length - 1) - 0.5;
+        }
+        return ranks;
+    }
+
+    private void update(final double[] ranks) {
+        final int pairs = memberCount / 2;
+        final int chunk = (pairs + workers - 1) / workers;
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int w = 0; w * chunk < pairs; w++) {
+            final double[] partial = partials[w];
+            final int fromPair = w * chunk;
+            final int toPair = Math.min(fromPair + chunk, pairs);
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    Arrays.fill(partial, 0);
+                    for (int p = fromPair; p < toPair; p++) {
+                        double weight = ranks[2 * p] - ranks[2 * p + 1];
+                        int offset = offsets[p];
+                        for (int j = 0; j < partial.length; j++) {
+                            partial[j] += weight * noise.get(offset + j);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Gradient reduction failed", e.getCause());
+        }
+
+        Arrays.fill(gradient, 0);
+        for (int w = 0; w < tasks.size(); w++) {
+            double[] partial = partials[w];
+            for (int j = 0; j < gradient.length; j++) {
+                gradient[j] += partial[j];
+            }
+        }
+
+        // Gradient ascent on the expected rank
+        step++;
+        double scale = 1.0 / (memberCount * sigma);
+        double correction1 = 1 - Math.pow(BETA1, step);
+        double correction2 = 1 - Math.pow(BETA2, step);
+        for (int j = 0; j < center.length; j++) {
+            double g = gradient[j] * scale;
+            moment[j] = BETA1 * moment[j] + (1 - BETA1) * g;
+            velocity[j] = BETA2 * velocity[j] + (1 - BETA2) * g * g;
+            center[j] += learningRate * (moment[j] / correction1) / (Math.sqrt(velocity[j] / correction2) + EPSILON);
+        }
+    }
+
+    private void sample(NeuralNetwork[] next, int from) {
+        members.clear();
+        memberCount = next.length - from;
+        int pairs = memberCount / 2;
+        if (offsets.length < pairs) {
+            offsets = new int[pairs];
+        }
+        for (int p = 0; p < pairs; p++) {
+            offsets[p] = random.nextInt(noise.size() - center.length + 1);
+            write(next[from + 2 * p], sigma, offsets[p]);
+            write(next[from + 2 * p + 1], -sigma, offsets[p]);
+        }
+        if (memberCount % 2 == 1) {
+            // The odd member plays the center itself and is left out of the gradient
+            write(next[next.length - 1], 0, 0);
+        }
+        for (int m = 0; m < memberCount; m++) {
+            members.put(next[from + m], m);
+        }
+    }
+
+    private void write(NeuralNetwork brain, double scale, int offset) {
+        int j = 0;
+        for (Matrix w : brain.weights) {
+            for (int i = 0; i < w.size(); i++, j++) {
+                double value = center[j] + scale * noise.get(offset + j);
+                if (w.data != null) {
+                    w.data[w.offset + i] = value;
+                } else {
+                    w.floats[w.offset + i] = (float) value;
+                }
+            }
+        }
+        brain.setHighestFitness(0);
+    }
+
+    public String name() {
+        return "evolution strategies";
+    }
+}
@@ -0,0 +1,142 @@
+package pl.morph.ai.snake.engine;
+
+import pl.morph.ai.snake.element.Direction;
+import pl.morph.ai.snake.element.WallManager;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Headless evolution on a {@link FlatSimulation}: every generation plays the whole population to the end, ranks it by
+ * fitness and lets the {@link GeneticOptimizer} breed the next one into a {@link GenomeArena}. No snake or network is
+ * allocated after the start, so the population is bounded by the heap for the arena and the flat game state.
+ * Prints the best and mean score, ticks per second and heap in use of every generation:
+ * {@code java -cp SnakeAi.jar pl.morph.ai.snake.engine.FlatEvolution [population] [generations] [FLOAT|DOUBLE]}
+ */
+public class FlatEvolution {
+    private static final int DOT_SIZE = 40;
+    private static final Direction[] HEADINGS = {Direction.LEFT, Direction.UP, Direction.RIGHT, Direction.DOWN};
+
+    final FlatSimulation simulation;
+    final GenomeArena arena;
+    private final GeneticOptimizer genetic = new GeneticOptimizer();
+    private final Random random;
+
+    private final Integer[] order;
+    private final NeuralNetwork[] ranked;
+    private final double[] fitness;
+    private final NeuralNetwork[] next;
+
+    private int generation;
+    private int bestScore;
+    private double meanScore;
+    private long ticks;
+
+    public FlatEvolution(int population, Precision precision, long seed) {
+        int columns = SimulationEngine.B_WIDTH / DOT_SIZE;
+        int rows = SimulationEngine.B_HEIGHT / DOT_SIZE;
+        simulation = new FlatSimulation(columns, rows,
+                WallManager.prepareWalls(DOT_SIZE, SimulationEngine.B_WIDTH, SimulationEngine.B_HEIGHT), population);
+        arena = new GenomeArena(new NeuralNetwork(FlatSimulation.INPUTS, 24, 3, 2, precision, false), precision, population);
+        random = new Random(seed);
+        for (int id = 0; id < population; id++) {
+            arena.brain(id).randomize();
+        }
+        order = new Integer[population];
+        ranked = new NeuralNetwork[population];
+        fitness = new double[population];
+        next = new NeuralNetwork[population];
+    }
+
+    /**
+     * Plays the current generation on {@code workers} ranges of snakes in parallel and breeds the next one.
+     */
+    public void step(ExecutorService executor, int workers) throws InterruptedException {
+        int population = order.length;
+        for (int id = 0; id < population; id++) {
+            simulation.start(id, arena.brain(id), HEADINGS[random.nextInt(HEADINGS.length)], random.nextLong());
+        }
+        simulation.play(executor, workers);
+        simulation.calculateFitness();
+        ticks = simulation.ticks();
+
+        long total = 0;
+        bestScore = 0;
+        for (int id = 0; id < population; id++) {
+            order[id] = id;
+            bestScore = Math.max(bestScore, simulation.getScore(id));
+            total += simulation.getScore(id);
+        }
+        meanScore = (double) total / population;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(simulation.getFitness(b), simulation.getFitness(a));
+            }
+        });
+        for (int i = 0; i < population; i++) {
+            ranked[i] = arena.brain(order[i]);
+            fitness[i] = simulation.getFitness(order[i]);
+            next[i] = arena.nextBrain(i);
+        }
+        genetic.breed(ranked, fitness, next, 0);
+        arena.swap();
+        generation++;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Best score of the last generation played.
+     */
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    public double getMeanScore() {
+        return meanScore;
+    }
+
+    /**
+     * Moves made in the last generation played, one per snake per tick.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    public GeneticOptimizer getGenetic() {
+        return genetic;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int population = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int generations = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        Precision precision = args.length > 2 ? Precision.valueOf(args[2]) : Precision.FLOAT;
+        if (population <= 0 || generations <= 0) {
+            System.err.println("Usage: FlatEvolution [population > 0] [generations > 0] [FLOAT|DOUBLE]");
+            System.exit(1);
+        }
+
+        FlatEvolution evolution = new FlatEvolution(population, precision, System.nanoTime());
+        int workers = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            Runtime runtime = Runtime.getRuntime();
+            System.out.println(String.format("%,d snakes, %s networks, %d workers", population, precision, workers));
+            for (int g = 0; g < generations; g++) {
+                long start = System.nanoTime();
+                evolution.step(executor, workers);
+                long elapsed = Math.max(1, System.nanoTime() - start);
+                System.out.println(String.format("gen %4d  best %3d  mean %6.2f  %,12.0f ticks/s  heap %,d MB",
+                        g, evolution.getBestScore(), evolution.getMeanScore(), evolution.getTicks() * 1e9 / elapsed,
+                        (runtime.totalMemory() - runtime.freeMemory()) >> 20));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package pl.morph.ai.snake.engine;
+
+import pl.morph.ai.snake.element.BoardGrid;
+import pl.morph.ai.snake.element.Direction;
+import pl.morph.ai.snake.element.FreeCells;
+import pl.morph.ai.snake.element.Wall;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.lang.Math.floor;
+import static java.lang.Math.pow;
+
+/**
+ * Headless simulation of a whole population with every snake's state in flat primitive arrays indexed by snake id,
+ * instead of one {@link pl.morph.ai.snake.element.Snake} object per snake. Per-cell state of snake {@code id} starts
+ * at {@code id * cells}: its body ring, its body occupancy and its {@link FreeCells} set. That is about 13 bytes per
+ * board cell per snake, 520 MB for 100k snakes on a 20x20 board.
+ * <p>
+ * Snakes play by the rules of {@code Snake}: a snake started from the same seed, heading and brain as a
+ * {@code Snake} given {@code setRandom(new Random(seed))} and {@code setRandomStartingPosition()} spawns on the same
+ * cell, eats the same apples and ends with the same fitness. Replays of the best snake's apples are not kept.
+ */
+public class FlatSimulation {
+    static final int INPUTS = 26;
+    private static final int LOOK_COUNT = 3;
+    // Rays of a look relative to the heading, in the order of the vision vector, as in Snake.look()
+    private static final Direction[] LOOK_ORDER = {Direction.LEFT, Direction.UP, Direction.RIGHT, Direction.DOWN,
+            Direction.TOP_LEFT, Direction.TOP_RIGHT, Direction.DOWN_RIGHT, Direction.DOWN_LEFT};
+    private static final Direction[] DIRECTIONS = Direction.values();
+    // java.util.Random's generator, so a seed gives the numbers new Random(seed) gives
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private final BoardGrid grid;
+    private final int cells;
+    private final long maxLife;
+    private final int capacity;
+
+    private final int[] body;
+    private final int[] head;
+    private final int[] length;
+    private final int[] headColumn;
+    private final int[] headRow;
+    private final byte[] bodyCells;
+    private final int[] freeCells;
+    private final int[] freeSlots;
+    private final int[] freeCount;
+    private final int[] appleColumn;
+    private final int[] appleRow;
+    private final byte[] direction;
+    private final long[] lifetime;
+    private final long[] timeLeft;
+    private final int[] score;
+    private final boolean[] alive;
+    private final double[] fitness;
+    private final long[] random;
+    // Vision of snake id at [id * INPUTS, (id + 1) * INPUTS), in the input layout of NeuralNetwork.decide()
+    private final double[] vision;
+    private final NeuralNetwork[] brains;
+
+    /**
+     * Room for {@code capacity} snakes on a board of {@code columns} by {@code rows} cells.
+     */
+    public FlatSimulation(int columns, int rows, List<Wall> walls, int capacity) {
+        this.grid = BoardGrid.of(columns, rows, walls);
+        this.cells = grid.size();
+        this.maxLife = columns * 15;
+        this.capacity = capacity;
+        body = new int[capacity * cells];
+        head = new int[capacity];
+        length = new int[capacity];
+        headColumn = new int[capacity];
+        headRow = new int[capacity];
+        bodyCells = new byte[capacity * cells];
+        freeCells = new int[capacity * cells];
+        freeSlots = new int[capacity * cells];
+        freeCount = new int[capacity];
+        appleColumn = new int[capacity];
+        appleRow = new int[capacity];
+        direction = new byte[capacity];
+        lifetime = new long[capacity];
+        timeLeft = new long[capacity];
+        score = new int[capacity];
+        alive = new boolean[capacity];
+        fitness = new double[capacity];
+        random = new long[capacity];
+        vision = new double[capacity * INPUTS];
+        brains = new NeuralNetwork[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Starts a new game of snake {@code id}: a random open cell, {@code heading}, and a first apple, all drawn
+     * from {@code seed}.
+     */
+    public void start(int id, NeuralNetwork brain, Direction heading, long seed) {
+        int base = id * cells;
+        brains[id] = brain;
+        random[id] = (seed ^ MULTIPLIER) & MASK;
+        direction[id] = (byte) heading.ordinal();
+        lifetime[id] = 0;
+        timeLeft[id] = maxLife;
+        score[id] = 0;
+        fitness[id] = 0;
+        alive[id] = true;
+
+        int cell = grid.randomOpenCell(nextDouble(id));
+        head[id] = 0;
+        length[id] = 1;
+        body[base] = cell;
+        headColumn[id] = grid.column(cell);
+        headRow[id] = grid.row(cell);
+        Arrays.fill(bodyCells, base, base + cells, (byte) 0);
+        freeCount[id] = FreeCells.fill(freeCells, freeSlots, base, cells);
+        for (int c = 0; c < cells; c++) {
+            refreshFree(id, c, cell);
+        }
+        spawnApple(id);
+    }
+
+    /**
+     * Plays every started snake until it dies, {@code workers} contiguous ranges of ids in parallel.
+     */
+    public void play(ExecutorService executor, int workers) throws InterruptedException {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        int chunk = (capacity + workers - 1) / workers;
+        for (int start = 0; start < capacity; start += chunk) {
+            final int from = start;
+            final int to = Math.min(start + chunk, capacity);
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    play(from, to);
+                    return null;
+                }
+            });
+        }
+        List<Future<Void>> futures = executor.invokeAll(tasks);
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Simulation range failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Plays snakes {@code [from, to)} one after another, each until it dies. Snakes do not meet, so the order only
+     * decides what stays in cache: one snake's state and brain, instead of a whole range's on every tick.
+     */
+    public void play(int from, int to) {
+        double[] input = new double[INPUTS];
+        for (int id = from; id < to; id++) {
+            NeuralNetwork brain = brains[id];
+            while (alive[id]) {
+                look(id);
+                System.arraycopy(vision, id * INPUTS, input, 0, INPUTS);
+                act(id, brain.decide(input));
+                move(id);
+            }
+        }
+    }
+
+    /**
+     * Fitness of every snake from its lifetime and score, as {@code Snake.calculateFitness()} computes it.
+     */
+    public void calculateFitness() {
+        for (int id = 0; id < capacity; id++) {
+            if (brains[id] == null) {
+                continue;
+            }
+            long life = lifetime[id];
+            int points = score[id];
+            double value;
+            if (points < 10) {
+                value = floor(life * life) * pow(2, points);
+            } else {
+                value = floor(life * life) * pow(2, 10) * pow(points - 9, 2);
+            }
+            value += pow(points, 4) * 500;
+            fitness[id] = value;
+            if (value > brains[id].getHighestFitness()) {
+                brains[id].setHighestFitness(value);
+            }
+        }
+    }
+
+    public double getFitness(int id) {
+        return fitness[id];
+    }
+
+    public int getScore(int id) {
+        return score[id];
+    }
+
+    public long getLifetime(int id) {
+        return lifetime[id];
+    }
+
+    public int getLength(int id) {
+        return length[id];
+    }
+
+    public boolean isAlive(int id) {
+        return alive[id];
+    }
+
+    /**
+     * Moves made by all snakes since they were started, every move is one tick of one snake.
+     */
+    public long ticks() {
+        long total = 0;
+        for (int id = 0; id < capacity; id++) {
+            total += lifetime[id];
+        }
+        return total;
+    }
+
+    void look(int id) {
+        Direction heading = DIRECTIONS[direction[id]];
+        int base = id * INPUTS;
+        vision[base] = heading.value();
+        vision[base + 1] = tailDirection(id, heading).value();
+        for (int r = 0; r < LOOK_ORDER.length; r++) {
+            int[] ray = heading.ray(LOOK_ORDER[r]);
+            lookInDirection(id, ray[0], ray[1], vision, base + 2 + r * LOOK_COUNT);
+        }
+    }
+
+    double[] getVision(int id) {
+        return Arrays.copyOfRange(vision, id * INPUTS, (id + 1) * INPUTS);
+    }
+
+    // Turns by a decision (0 left, 1 right, 2 forward)
+    void act(int id, int decision) {
+        direction[id] = (byte) DIRECTIONS[direction[id]].turn(decision).ordinal();
+    }
+
+    private Direction tailDirection(int id, Direction heading) {
+        int n = length[id];
+        if (n < 2) {
+            return heading;
+        }
+        int last = body[at(id, n - 1)];
+        int xLast = grid.column(last);
+        int yLast = grid.row(last);
+        int xBeforeLast = n == 2 ? headColumn[id] : grid.column(body[at(id, n - 2)]);
+        int yBeforeLast = n == 2 ? headRow[id] : grid.row(body[at(id, n - 2)]);
+
+        if (xLast == xBeforeLast) {
+            return yBeforeLast > yLast ? Direction.DOWN : Direction.UP;
+        }
+        if (yLast == yBeforeLast) {
+            return xBeforeLast > xLast ? Direction.RIGHT : Direction.LEFT;
+        }
+        return Direction.random();
+    }
+
+    private void lookInDirection(int id, int X, int Y, double[] look, int offset) {
+        int base = id * cells;
+        int start = body[base + head[id]];
+        int ray = grid.direction(X, Y);
+        int wall = grid.wallDistance(start, ray);
+        look[offset] = 0;
+        look[offset + 1] = 0;
+        int dx = appleColumn[id] - headColumn[id];
+        int dy = appleRow[id] - headRow[id];
+        int steps = X != 0 ? dx * X : dy * Y;
+        if (steps > 0 && steps < wall && steps * X == dx && steps * Y == dy) {
+            look[offset] = grid.reciprocal(steps);
+        }
+        if (length[id] > 1) {
+            int step = grid.step(ray);
+            int cell = start;
+            for (int k = 1; k < wall; k++) {
+                cell += step;
+                if (bodyCells[base + cell] > 0) {
+                    look[offset + 1] = grid.reciprocal(k);
+                    break;
+                }
+            }
+        }
+        look[offset + 2] = grid.reciprocal(wall);
+    }
+
+    // One step of Snake.move(), in the same order so apples are drawn from the same free sets
+    void move(int id) {
+        int base = id * cells;
+        lifetime[id]++;
+        timeLeft[id]--;
+        int oldLength = length[id];
+        int oldHead = body[base + head[id]];
+        if (headColumn[id] == appleColumn[id] && headRow[id] == appleRow[id]) {
+            eat(id);
+        }
+        if (timeLeft[id] <= 0) {
+            alive[id] = false;
+        }
+        int oldTail = body[at(id, oldLength - 1)];
+        head[id] = head[id] == 0 ? cells - 1 : head[id] - 1;
+        bodyCells[base + oldHead]++;
+        if (length[id] == oldLength) {
+            bodyCells[base + oldTail]--;
+        }
+        switch (DIRECTIONS[direction[id]]) {
+            case LEFT:
+                headColumn[id]--;
+                break;
+            case RIGHT:
+                headColumn[id]++;
+                break;
+            case UP:
+                headRow[id]--;
+                break;
+            case DOWN:
+                headRow[id]++;
+                break;
+        }
+
+        int headCell = grid.cell(headColumn[id], headRow[id]);
+        body[base + head[id]] = headCell;
+        refreshFree(id, oldHead, headCell);
+        refreshFree(id, oldTail, headCell);
+        refreshFree(id, headCell, headCell);
+
+        if (headCell < 0 || grid.isWallCell(headCell) || bodyCells[base + headCell] > 0 || timeLeft[id] <= 0) {
+            alive[id] = false;
+        }
+    }
+
+    private void eat(int id) {
+        long effectiveMax = maxLife + length[id] * 2;
+        if (timeLeft[id] < effectiveMax) {
+            timeLeft[id] = Math.min(timeLeft[id] + maxLife, effectiveMax);
+        }
+        score[id]++;
+        length[id]++;
+        spawnApple(id);
+    }
+
+    private void spawnApple(int id) {
+        if (freeCount[id] > 0) {
+            int cell = FreeCells.sample(freeCells, id * cells, freeCount[id], nextDouble(id));
+            appleColumn[id] = grid.column(cell);
+            appleRow[id] = grid.row(cell);
+        } else {
+            appleColumn[id] = (int) (nextDouble(id) * grid.columns());
+            appleRow[id] = (int) (nextDouble(id) * grid.rows());
+        }
+    }
+
+    private void refreshFree(int id, int cell, int headCell) {
+        if (cell < 0) {
+            return;
+        }
+        int base = id * cells;
+        if (cell == headCell || bodyCells[base + cell] > 0 || grid.isWallCell(cell)) {
+            freeCount[id] = FreeCells.occupy(freeCells, freeSlots, base, freeCount[id], cell);
+        } else {
+            freeCount[id] = FreeCells.release(freeCells, freeSlots, base, freeCount[id], cell);
+        }
+    }
+
+    // Index of body segment i of snake id in body
+    private int at(int id, int i) {
+        int index = head[id] + i;
+        return id * cells + (index < cells ? index : index - cells);
+    }
+
+    private double nextDouble(int id) {
+        return (((long) next(id, 26) << 27) + next(id, 27)) * 0x1.0p-53;
+    }
+
+    private int next(int id, int bits) {
+        long seed = (random[id] * MULTIPLIER + 0xBL) & MASK;
+        random[id] = seed;
+        return (int) (seed >>> (48 - bits));
+    }
+}
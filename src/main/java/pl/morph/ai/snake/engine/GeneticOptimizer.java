@@ -0,0 +1,113 @@
+package pl.morph.ai.snake.engine;
+
+import pl.morph.ai.snake.element.Snake;
+
+import java.util.List;
+
+/**
+ * The classic loop of the game: the best snakes are carried over unchanged, every other genome is a tournament
+ * selected parent, crossed over with a second one and mutated.
+ */
+public class GeneticOptimizer implements Optimizer {
+    static final int ELITISM_COUNT = 5;
+    static final int TOURNAMENT_SIZE = 5;
+
+    // Tuned from the UI while the engine runs
+    private volatile double mutationRate = 0.03;
+    private volatile double crossoverRate = 0.9;
+    private volatile double saveSnakeRatio = 0.5;
+    private volatile boolean bestOnly = false;
+
+    public void breed(List<Snake> generation, NeuralNetwork[] next, int from) {
+        NeuralNetwork[] ranked = new NeuralNetwork[generation.size()];
+        double[] fitness = new double[ranked.length];
+        for (int i = 0; i < ranked.length; i++) {
+            ranked[i] = generation.get(i).getBrain();
+            fitness[i] = generation.get(i).getFitness();
+        }
+        breed(ranked, fitness, next, from);
+    }
+
+    /**
+     * {@link #breed(List, NeuralNetwork[], int)} for engines that keep no {@link Snake}s, such as
+     * {@link FlatSimulation}.
+     *
+     * @param ranked  networks of the finished generation, best first
+     * @param fitness fitness of {@code ranked[i]}
+     */
+    public void breed(NeuralNetwork[] ranked, double[] fitness, NeuralNetwork[] next, int from) {
+        int slot = from;
+
+        // Elitism: carry top snakes unmodified (no mutation) into next generation
+        for (int i = 0; i < Math.min(ELITISM_COUNT, ranked.length) && slot < next.length; i++) {
+            ranked[i].copyInto(next[slot++]);
+        }
+
+        // Fill rest with crossover + mutation
+        for (; slot < next.length; slot++) {
+            NeuralNetwork parent1 = ranked[tournamentSelect(fitness)];
+            NeuralNetwork parent2 = ranked[tournamentSelect(fitness)];
+
+            NeuralNetwork brain = next[slot];
+            double rand = Matrix.random(0, 1);
+            if (rand < crossoverRate) {
+                parent1.crossoverInto(parent2, brain);
+            } else {
+                parent1.copyInto(brain);
+            }
+            brain.mutate(mutationRate);
+        }
+    }
+
+    // Index of the fittest of a few random picks from the best saveSnakeRatio share
+    private int tournamentSelect(double[] fitness) {
+        if (bestOnly) {
+            return 0;
+        }
+        int poolSize = Math.max(1, (int) (fitness.length * saveSnakeRatio));
+        int best = -1;
+        for (int i = 0; i < TOURNAMENT_SIZE; i++) {
+            int idx = (int) (Math.random() * poolSize);
+            if (best < 0 || fitness[idx] > fitness[best]) {
+                best = idx;
+            }
+        }
+        return best;
+    }
+
+    public String name() {
+        return "genetic";
+    }
+
+    public double getMutationRate() {
+        return mutationRate;
+    }
+
+    public void setMutationRate(double mutationRate) {
+        this.mutationRate = mutationRate;
+    }
+
+    public double getCrossoverRate() {
+        return crossoverRate;
+    }
+
+    public void setCrossoverRate(double crossoverRate) {
+        this.crossoverRate = crossoverRate;
+    }
+
+    public double getSaveSnakeRatio() {
+        return saveSnakeRatio;
+    }
+
+    public void setSaveSnakeRatio(double saveSnakeRatio) {
+        this.saveSnakeRatio = saveSnakeRatio;
+    }
+
+    public boolean isBestOnly() {
+        return bestOnly;
+    }
+
+    public void setBestOnly(boolean bestOnly) {
+        this.bestOnly = bestOnly;
+    }
+}
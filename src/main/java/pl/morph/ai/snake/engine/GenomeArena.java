@@ -0,0 +1,105 @@
+package pl.morph.ai.snake.engine;
+
+import pl.morph.ai.snake.element.Snake;
+
+/**
+ * Two pre-allocated generations of genomes for a population of one topology and precision.
+ * <p>
+ * Each generation is a single slab holding every genome back to back, genome {@code s} occupies
+ * {@code [s * genomeSize, (s + 1) * genomeSize)} with its layers in order. The brains handed out are
+ * {@link NeuralNetwork}s whose matrices are views into a slab, so breeding writes straight into memory
+ * that was allocated once. The front slab holds the current generation, the next one is written into the
+ * back slab and {@link #swap()} flips them. The {@link Snake}s carrying the brains are kept per slot as well,
+ * so they can be reset instead of recreated.
+ */
+public class GenomeArena {
+    private final int iNodes, hNodes, oNodes, hLayers;
+    private final Precision precision;
+    private final int capacity;
+    private final int genomeSize;
+
+    private final NeuralNetwork[][] brains = new NeuralNetwork[2][];
+    private final Snake[][] snakes = new Snake[2][];
+    private int front = 0;
+
+    public GenomeArena(NeuralNetwork shape, Precision precision, int capacity) {
+        this.iNodes = shape.iNodes;
+        this.hNodes = shape.hNodes;
+        this.oNodes = shape.oNodes;
+        this.hLayers = shape.hLayers;
+        this.precision = precision;
+        this.capacity = capacity;
+
+        int[] rows = new int[hLayers + 1];
+        int[] cols = new int[hLayers + 1];
+        int size = 0;
+        for (int l = 0; l <= hLayers; l++) {
+            rows[l] = l == hLayers ? oNodes : hNodes;
+            cols[l] = (l == 0 ? iNodes : hNodes) + 1;
+            size += rows[l] * cols[l];
+        }
+        genomeSize = size;
+
+        for (int g = 0; g < 2; g++) {
+            double[] slab = precision == Precision.DOUBLE ? new double[capacity * genomeSize] : null;
+            float[] floatSlab = precision == Precision.FLOAT ? new float[capacity * genomeSize] : null;
+            brains[g] = new NeuralNetwork[capacity];
+            snakes[g] = new Snake[capacity];
+            for (int s = 0; s < capacity; s++) {
+                Matrix[] weights = new Matrix[hLayers + 1];
+                int offset = s * genomeSize;
+                for (int l = 0; l <= hLayers; l++) {
+                    weights[l] = slab != null
+                            ? new Matrix(rows[l], cols[l], slab, offset)
+                            : new Matrix(rows[l], cols[l], floatSlab, offset);
+                    offset += rows[l] * cols[l];
+                }
+                brains[g][s] = new NeuralNetwork(iNodes, hNodes, oNodes, hLayers, precision, weights);
+            }
+        }
+    }
+
+    /**
+     * True if this arena can hold {@code capacity} genomes shaped like {@code shape} in {@code precision}.
+     */
+    public boolean fits(NeuralNetwork shape, Precision precision, int capacity) {
+        return this.precision == precision && this.capacity >= capacity
+                && iNodes == shape.iNodes && hNodes == shape.hNodes && oNodes == shape.oNodes && hLayers == shape.hLayers;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Brain in the front slab, a genome of the current generation.
+     */
+    public NeuralNetwork brain(int slot) {
+        return brains[front][slot];
+    }
+
+    /**
+     * Brain in the back slab, to be overwritten with a genome of the next generation.
+     */
+    public NeuralNetwork nextBrain(int slot) {
+        return brains[1 - front][slot];
+    }
+
+    /**
+     * Snake that carried slot {@code slot} of the back slab before, or null if none was stored yet.
+     */
+    public Snake nextSnake(int slot) {
+        return snakes[1 - front][slot];
+    }
+
+    public void setNextSnake(int slot, Snake snake) {
+        snakes[1 - front][slot] = snake;
+    }
+
+    /**
+     * Makes the back slab the current generation. The old front slab is overwritten by the next breeding.
+     */
+    public void swap() {
+        front = 1 - front;
+    }
+}
@@ -0,0 +1,270 @@
+package pl.morph.ai.snake.engine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Weights of a whole population outside the Java heap, in direct buffers or a memory-mapped file.
+ * <p>
+ * Genome {@code i} is stored as the values of its layers in order, in the store's precision. The genomes are
+ * spread over segments of at most {@link #MAX_SEGMENT_BYTES}, so a store is not limited by the 2 GB size of one
+ * buffer and millions of genomes fit. Reads and writes use absolute positions only, so workers may access
+ * different genomes concurrently. None of it is scanned by the garbage collector.
+ * <p>
+ * A file backed store starts with a {@link #HEADER_BYTES} header (topology, precision, capacity, size and
+ * generation). Reopening the file gives back the same genomes without a deserialization pass.
+ */
+public class GenomeStore implements Closeable {
+    static final int MAGIC = 0x534E4B47;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private static final int MAGIC_AT = 0, VERSION_AT = 4, INPUT_AT = 8, HIDDEN_AT = 12, OUTPUT_AT = 16,
+            LAYERS_AT = 20, PRECISION_AT = 24, CAPACITY_AT = 28, SIZE_AT = 32, GENERATION_AT = 40;
+
+    private final int iNodes, hNodes, oNodes, hLayers;
+    private final Precision precision;
+    private final int capacity;
+    private final int valueBytes;
+    private final int genomeBytes;
+    private final int genomesPerSegment;
+    private final ByteBuffer header;
+    private final ByteBuffer[] segments;
+    private final RandomAccessFile file;
+
+    private GenomeStore(int input, int hidden, int output, int hiddenLayers, Precision precision, int capacity,
+                        RandomAccessFile file, long maxSegmentBytes) throws IOException {
+        this.iNodes = input;
+        this.hNodes = hidden;
+        this.oNodes = output;
+        this.hLayers = hiddenLayers;
+        this.precision = precision;
+        this.capacity = capacity;
+        this.file = file;
+
+        valueBytes = precision == Precision.FLOAT ? 4 : 8;
+        int values = hidden * (input + 1) + (hiddenLayers - 1) * hidden * (hidden + 1) + output * (hidden + 1);
+        genomeBytes = values * valueBytes;
+        genomesPerSegment = (int) Math.max(1, Math.min(capacity, maxSegmentBytes / genomeBytes));
+
+        int segmentCount = (capacity + genomesPerSegment - 1) / genomesPerSegment;
+        segments = new ByteBuffer[segmentCount];
+        if (file == null) {
+            header = ByteBuffer.allocateDirect(HEADER_BYTES);
+            for (int s = 0; s < segmentCount; s++) {
+                segments[s] = ByteBuffer.allocateDirect(segmentGenomes(s) * genomeBytes);
+            }
+        } else {
+            FileChannel channel = file.getChannel();
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            for (int s = 0; s < segmentCount; s++) {
+                long start = HEADER_BYTES + (long) s * genomesPerSegment * genomeBytes;
+                segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, start, (long) segmentGenomes(s) * genomeBytes);
+            }
+        }
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        for (ByteBuffer segment : segments) {
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Store in direct buffers for {@code capacity} genomes shaped like {@code shape}, lost when the process ends.
+     */
+    public static GenomeStore allocateDirect(NeuralNetwork shape, Precision precision, int capacity) {
+        try {
+            GenomeStore store = new GenomeStore(shape.iNodes, shape.hNodes, shape.oNodes, shape.hLayers,
+                    precision, capacity, null, MAX_SEGMENT_BYTES);
+            store.writeHeader();
+            return store;
+        } catch (IOException e) {
+            // Only mapping a file can fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Maps {@code path}, creating it for {@code capacity} genomes shaped like {@code shape} if it does not exist.
+     * An existing file is reopened with its genomes, it has to hold the same topology and precision.
+     */
+    public static GenomeStore open(File path, NeuralNetwork shape, Precision precision, int capacity) throws IOException {
+        return open(path, shape, precision, capacity, MAX_SEGMENT_BYTES);
+    }
+
+    static GenomeStore open(File path, NeuralNetwork shape, Precision precision, int capacity,
+                            long maxSegmentBytes) throws IOException {
+        if (path.exists() && path.length() > 0) {
+            GenomeStore store = open(path, maxSegmentBytes);
+            if (store.iNodes != shape.iNodes || store.hNodes != shape.hNodes || store.oNodes != shape.oNodes
+                    || store.hLayers != shape.hLayers || store.precision != precision) {
+                store.close();
+                throw new IOException(path + " holds genomes of another topology or precision");
+            }
+            return store;
+        }
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        GenomeStore store = new GenomeStore(shape.iNodes, shape.hNodes, shape.oNodes, shape.hLayers,
+                precision, capacity, file, maxSegmentBytes);
+        store.writeHeader();
+        return store;
+    }
+
+    /**
+     * Reopens an existing store file, topology and precision are read from its header.
+     */
+    public static GenomeStore open(File path) throws IOException {
+        return open(path, MAX_SEGMENT_BYTES);
+    }
+
+    private static GenomeStore open(File path, long maxSegmentBytes) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            ByteBuffer header = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(MAGIC_AT) != MAGIC || header.getInt(VERSION_AT) != VERSION) {
+                throw new IOException(path + " is not a genome store");
+            }
+            return new GenomeStore(header.getInt(INPUT_AT), header.getInt(HIDDEN_AT), header.getInt(OUTPUT_AT),
+                    header.getInt(LAYERS_AT), Precision.values()[header.getInt(PRECISION_AT)],
+                    header.getInt(CAPACITY_AT), file, maxSegmentBytes);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void writeHeader() {
+        header.putInt(MAGIC_AT, MAGIC);
+        header.putInt(VERSION_AT, VERSION);
+        header.putInt(INPUT_AT, iNodes);
+        header.putInt(HIDDEN_AT, hNodes);
+        header.putInt(OUTPUT_AT, oNodes);
+        header.putInt(LAYERS_AT, hLayers);
+        header.putInt(PRECISION_AT, precision.ordinal());
+        header.putInt(CAPACITY_AT, capacity);
+        header.putInt(SIZE_AT, 0);
+        header.putLong(GENERATION_AT, 0);
+    }
+
+    private int segmentGenomes(int segment) {
+        return Math.min(genomesPerSegment, capacity - segment * genomesPerSegment);
+    }
+
+    /**
+     * Stores the weights of {@code network} as genome {@code index}, converting them to the store's precision.
+     */
+    public void write(int index, NeuralNetwork network) {
+        checkTopology(network);
+        ByteBuffer segment = segments[segmentOf(index)];
+        int position = (index % genomesPerSegment) * genomeBytes;
+        for (Matrix w : network.weights) {
+            int end = w.offset + w.size();
+            for (int i = w.offset; i < end; i++) {
+                double value = w.data != null ? w.data[i] : w.floats[i];
+                if (precision == Precision.FLOAT) {
+                    segment.putFloat(position, (float) value);
+                } else {
+                    segment.putDouble(position, value);
+                }
+                position += valueBytes;
+            }
+        }
+    }
+
+    /**
+     * Loads genome {@code index} into the existing {@code network}, which keeps its precision.
+     */
+    public void read(int index, NeuralNetwork network) {
+        checkTopology(network);
+        ByteBuffer segment = segments[segmentOf(index)];
+        int position = (index % genomesPerSegment) * genomeBytes;
+        for (Matrix w : network.weights) {
+            int end = w.offset + w.size();
+            for (int i = w.offset; i < end; i++) {
+                double value = precision == Precision.FLOAT ? segment.getFloat(position) : segment.getDouble(position);
+                if (w.data != null) {
+                    w.data[i] = value;
+                } else {
+                    w.floats[i] = (float) value;
+                }
+                position += valueBytes;
+            }
+        }
+    }
+
+    /**
+     * Genome {@code index} as a new network in the store's precision.
+     */
+    public NeuralNetwork read(int index) {
+        NeuralNetwork network = new NeuralNetwork(iNodes, hNodes, oNodes, hLayers, precision, false);
+        read(index, network);
+        return network;
+    }
+
+    private int segmentOf(int index) {
+        if (index < 0 || index >= capacity) {
+            throw new IndexOutOfBoundsException("Genome " + index + " of " + capacity);
+        }
+        return index / genomesPerSegment;
+    }
+
+    private void checkTopology(NeuralNetwork network) {
+        if (network.iNodes != iNodes || network.hNodes != hNodes || network.oNodes != oNodes || network.hLayers != hLayers) {
+            throw new IllegalArgumentException("Network topology does not match the genome store");
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Number of genomes in use, as recorded by {@link #setSize(int)}.
+     */
+    public int size() {
+        return header.getInt(SIZE_AT);
+    }
+
+    public void setSize(int size) {
+        header.putInt(SIZE_AT, size);
+    }
+
+    public long getGeneration() {
+        return header.getLong(GENERATION_AT);
+    }
+
+    public void setGeneration(long generation) {
+        header.putLong(GENERATION_AT, generation);
+    }
+
+    /**
+     * Writes the mapped pages back to the file, a no-op for direct buffers.
+     */
+    public void flush() {
+        if (file == null) {
+            return;
+        }
+        for (ByteBuffer segment : segments) {
+            ((MappedByteBuffer) segment).force();
+        }
+        ((MappedByteBuffer) header).force();
+    }
+
+    public void close() throws IOException {
+        if (file != null) {
+            flush();
+            file.close();
+        }
+    }
+}
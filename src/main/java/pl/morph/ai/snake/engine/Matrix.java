@@ -1,25 +1,98 @@
 package pl.morph.ai.snake.engine;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static java.lang.Math.floor;
 
+/**
+ * Dense row-major matrix. All values live in one contiguous array, element (i, j) is at {@code offset + i * cols + j}.
+ * Depending on {@link #precision} the values are held in {@code data} (double) or {@code floats} (float),
+ * the other array is null. A matrix owns its array unless it is a view into a {@link GenomeArena} slab,
+ * then {@code offset} is where its values start.
+ */
 public class Matrix implements Serializable {
     private static final long serialVersionUID = 568494227179495863L;
+
+    // "matrix" is the old double[][] layout, it is only read back from saves made before the flat storage
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("rows", int.class),
+            new ObjectStreamField("cols", int.class),
+            new ObjectStreamField("precision", Precision.class),
+            new ObjectStreamField("data", double[].class),
+            new ObjectStreamField("floats", float[].class),
+            new ObjectStreamField("matrix", double[][].class)
+    };
+
     int rows, cols;
-    double[][] matrix;
+    int offset;
+    Precision precision;
+    double[] data;
+    float[] floats;
 
     public Matrix(int r, int c) {
+        this(r, c, Precision.DOUBLE);
+    }
+
+    public Matrix(int r, int c, Precision precision) {
+        rows = r;
+        cols = c;
+        this.precision = precision;
+        if (precision == Precision.FLOAT) {
+            floats = new float[rows * cols];
+        } else {
+            data = new double[rows * cols];
+        }
+    }
+
+    /**
+     * View of {@code r * c} values of {@code slab} starting at {@code offset}.
+     */
+    Matrix(int r, int c, double[] slab, int offset) {
+        rows = r;
+        cols = c;
+        precision = Precision.DOUBLE;
+        data = slab;
+        this.offset = offset;
+    }
+
+    Matrix(int r, int c, float[] slab, int offset) {
         rows = r;
         cols = c;
-        matrix = new double[rows][cols];
+        precision = Precision.FLOAT;
+        floats = slab;
+        this.offset = offset;
     }
 
     public Matrix(double[][] m) {
-        matrix = m;
-        rows = matrix.length;
-        cols = matrix[0].length;
+        rows = m.length;
+        cols = m[0].length;
+        precision = Precision.DOUBLE;
+        data = new double[rows * cols];
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(m[i], 0, data, i * cols, cols);
+        }
+    }
+
+    double get(int i, int j) {
+        return data != null ? data[offset + i * cols + j] : floats[offset + i * cols + j];
+    }
+
+    void set(int i, int j, double value) {
+        if (data != null) {
+            data[offset + i * cols + j] = value;
+        } else {
+            floats[offset + i * cols + j] = (float) value;
+        }
+    }
+
+    int size() {
+        return rows * cols;
     }
 
     Matrix dot(Matrix n) {
@@ -30,37 +103,58 @@ public class Matrix implements Serializable {
                 for (int j = 0; j < n.cols; j++) {
                     double sum = 0;
                     for (int k = 0; k < cols; k++) {
-                        sum += matrix[i][k] * n.matrix[k][j];
+                        sum += get(i, k) * n.get(k, j);
                     }
-                    result.matrix[i][j] = sum;
+                    result.data[i * n.cols + j] = sum;
                 }
             }
         }
         return result;
     }
 
+    /**
+     * Fused dense layer: {@code output = W * [input, 1]}, optionally followed by ReLU.
+     * The last column of every row is the bias, so {@code input} holds {@code cols - 1} values
+     * and {@code output} receives {@code rows} values.
+     */
+    void feedForward(double[] input, double[] output, boolean relu) {
+        feedForward(input, 0, output, 0, relu);
+    }
+
+    void feedForward(double[] input, int inputOffset, double[] output, int outputOffset, boolean relu) {
+        DenseKernels.get().dense(data, offset, rows, cols, input, inputOffset, output, outputOffset, relu);
+    }
+
+    /**
+     * Single precision variant of {@link #feedForward(double[], int, double[], int, boolean)} for {@link Precision#FLOAT}.
+     */
+    void feedForward(float[] input, int inputOffset, float[] output, int outputOffset, boolean relu) {
+        DenseKernels.get().dense(floats, offset, rows, cols, input, inputOffset, output, outputOffset, relu);
+    }
+
     void randomize() {
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                matrix[i][j] = random(-1, 1);
+        int end = offset + size();
+        if (data != null) {
+            for (int i = offset; i < end; i++) {
+                data[i] = random(-1, 1);
+            }
+        } else {
+            for (int i = offset; i < end; i++) {
+                floats[i] = (float) random(-1, 1);
             }
         }
     }
 
     Matrix singleColumnMatrixFromArray(double[] arr) {
         Matrix n = new Matrix(arr.length, 1);
-        for (int i = 0; i < arr.length; i++) {
-            n.matrix[i][0] = arr[i];
-        }
+        System.arraycopy(arr, 0, n.data, 0, arr.length);
         return n;
     }
 
     double[] toArray() {
-        double[] arr = new double[rows * cols];
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                arr[j + i * cols] = matrix[i][j];
-            }
+        double[] arr = new double[size()];
+        for (int i = 0; i < arr.length; i++) {
+            arr[i] = data != null ? data[offset + i] : floats[offset + i];
         }
         return arr;
     }
@@ -68,18 +162,16 @@ public class Matrix implements Serializable {
     Matrix addBias() {
         Matrix n = new Matrix(rows + 1, 1);
         for (int i = 0; i < rows; i++) {
-            n.matrix[i][0] = matrix[i][0];
+            n.data[i] = get(i, 0);
         }
-        n.matrix[rows][0] = 1;
+        n.data[rows] = 1;
         return n;
     }
 
     Matrix activate() {
         Matrix n = new Matrix(rows, cols);
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                n.matrix[i][j] = relu(matrix[i][j]);
-            }
+        for (int i = 0; i < n.data.length; i++) {
+            n.data[i] = relu(data != null ? data[offset + i] : floats[offset + i]);
         }
         return n;
     }
@@ -90,75 +182,193 @@ public class Matrix implements Serializable {
 
     Matrix softmax() {
         Matrix n = new Matrix(rows, cols);
+        softmax(toArray(), 0, n.data, n.data.length);
+        return n;
+    }
+
+    static void softmax(double[] values, int offset, double[] output, int length) {
         double max = Double.NEGATIVE_INFINITY;
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                if (matrix[i][j] > max) max = matrix[i][j];
-            }
+        for (int i = 0; i < length; i++) {
+            if (values[offset + i] > max) max = values[offset + i];
         }
         double sum = 0;
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                n.matrix[i][j] = Math.exp(matrix[i][j] - max);
-                sum += n.matrix[i][j];
-            }
+        for (int i = 0; i < length; i++) {
+            output[i] = Math.exp(values[offset + i] - max);
+            sum += output[i];
         }
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                n.matrix[i][j] /= sum;
-            }
+        for (int i = 0; i < length; i++) {
+            output[i] /= sum;
         }
-        return n;
     }
 
+    static void softmax(float[] values, int offset, double[] output, int length) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i++) {
+            if (values[offset + i] > max) max = values[offset + i];
+        }
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            output[i] = Math.exp(values[offset + i] - max);
+            sum += output[i];
+        }
+        for (int i = 0; i < length; i++) {
+            output[i] /= sum;
+        }
+    }
+
+    /**
+     * Mutates every value independently with probability {@code mutationRate}. Instead of drawing a number for
+     * every value, the gaps between mutated positions are drawn from the matching geometric distribution, so the
+     * cost follows the number of mutations rather than the matrix size.
+     */
     void mutate(double mutationRate) {
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                double rand = random(0,1);
-                if (rand < mutationRate) {
-                    // 10% chance to fully reset weight for exploration
-                    if (random(0, 1) < 0.1) {
-                        matrix[i][j] = random(-1, 1);
-                    } else {
-                        matrix[i][j] += randomGaussian() / 5;
-                        if (matrix[i][j] > 1) {
-                            matrix[i][j] = 1;
-                        }
-                        if (matrix[i][j] < -1) {
-                            matrix[i][j] = -1;
-                        }
-                    }
-                }
+        if (mutationRate <= 0) {
+            return;
+        }
+        // log1p keeps tiny rates apart from 0, below about 1e-308 nothing mutates
+        double logKeep = Math.log1p(-mutationRate);
+        if (logKeep == 0) {
+            return;
+        }
+        int size = size();
+        for (long i = nextGap(logKeep); i < size; i += 1 + nextGap(logKeep)) {
+            int index = offset + (int) i;
+            if (data != null) {
+                data[index] = mutateValue(data[index]);
+            } else {
+                floats[index] = (float) mutateValue(floats[index]);
             }
         }
     }
 
+    private static long nextGap(double logKeep) {
+        return nextGap(logKeep, ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * Number of values skipped before the next mutation, P(gap = k) = (1 - rate)^k * rate, for
+     * {@code logKeep = Math.log1p(-rate)} below 0 and {@code uniform} in [0, 1). Capped at
+     * {@link Integer#MAX_VALUE}, past the end of any matrix, so adding it to a position cannot overflow.
+     */
+    static long nextGap(double logKeep, double uniform) {
+        if (logKeep == Double.NEGATIVE_INFINITY) {
+            return 0;
+        }
+        // 1 - uniform is in (0, 1], keeping log() finite
+        return (long) Math.min(floor(Math.log(1 - uniform) / logKeep), Integer.MAX_VALUE);
+    }
+
+    private static double mutateValue(double value) {
+        // 10% chance to fully reset weight for exploration
+        if (random(0, 1) < 0.1) {
+            return random(-1, 1);
+        }
+        value += randomGaussian() / 5;
+        if (value > 1) {
+            value = 1;
+        }
+        if (value < -1) {
+            value = -1;
+        }
+        return value;
+    }
+
     Matrix crossover(Matrix partner) {
-        Matrix child = new Matrix(rows, cols);
+        Matrix child = new Matrix(rows, cols, precision);
+        crossoverInto(partner, child);
+        return child;
+    }
 
+    /**
+     * One-point crossover of this matrix and {@code partner} written into {@code child}, which keeps its own precision.
+     * All three matrices have the same shape.
+     */
+    void crossoverInto(Matrix partner, Matrix child) {
         int randC = (int) floor(random(0,cols));
         int randR = (int) floor(random(0,rows));
 
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                if ((i < randR) || (i == randR && j <= randC)) {
-                    child.matrix[i][j] = matrix[i][j];
-                } else {
-                    child.matrix[i][j] = partner.matrix[i][j];
-                }
+        // Row-major order makes the one-point crossover a single split of the flat array
+        int split = randR * cols + randC + 1;
+        copyRange(this, 0, split, child);
+        copyRange(partner, split, size(), child);
+    }
+
+    public Matrix clone() {
+        Matrix clone = new Matrix(rows, cols, precision);
+        copyInto(clone);
+        return clone;
+    }
+
+    /**
+     * Copies all values into {@code dest} of the same shape, converting to its precision if needed.
+     */
+    void copyInto(Matrix dest) {
+        copyRange(this, 0, size(), dest);
+    }
+
+    private static void copyRange(Matrix from, int start, int end, Matrix to) {
+        int shift = to.offset - from.offset;
+        if (from.precision == to.precision) {
+            if (from.data != null) {
+                System.arraycopy(from.data, from.offset + start, to.data, to.offset + start, end - start);
+            } else {
+                System.arraycopy(from.floats, from.offset + start, to.floats, to.offset + start, end - start);
+            }
+        } else if (to.data != null) {
+            for (int i = from.offset + start; i < from.offset + end; i++) {
+                to.data[i + shift] = from.floats[i];
+            }
+        } else {
+            for (int i = from.offset + start; i < from.offset + end; i++) {
+                to.floats[i + shift] = (float) from.data[i];
             }
         }
-        return child;
     }
 
-    public Matrix clone() {
-        Matrix clone = new Matrix(rows, cols);
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                clone.matrix[i][j] = matrix[i][j];
+    /**
+     * Returns this matrix if it already has the given precision, otherwise a converted copy.
+     */
+    Matrix toPrecision(Precision target) {
+        if (target == precision) {
+            return this;
+        }
+        Matrix converted = new Matrix(rows, cols, target);
+        copyInto(converted);
+        return converted;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("rows", rows);
+        fields.put("cols", cols);
+        fields.put("precision", precision);
+        // A view only saves its own values, not the whole slab
+        boolean view = offset != 0 || (data != null ? data.length : floats.length) != size();
+        fields.put("data", view && data != null ? toArray() : data);
+        fields.put("floats", view && floats != null ? Arrays.copyOfRange(floats, offset, offset + size()) : floats);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        rows = fields.get("rows", 0);
+        cols = fields.get("cols", 0);
+        data = (double[]) fields.get("data", null);
+        floats = (float[]) fields.get("floats", null);
+        precision = (Precision) fields.get("precision", null);
+        if (precision == null) {
+            precision = floats != null ? Precision.FLOAT : Precision.DOUBLE;
+        }
+        if (data == null && floats == null) {
+            double[][] legacy = (double[][]) fields.get("matrix", null);
+            if (legacy == null) {
+                throw new IOException("Matrix has neither flat nor legacy data");
+            }
+            data = new double[rows * cols];
+            for (int i = 0; i < rows; i++) {
+                System.arraycopy(legacy[i], 0, data, i * cols, cols);
             }
         }
-        return clone;
     }
 
     private static double randomGaussian() {
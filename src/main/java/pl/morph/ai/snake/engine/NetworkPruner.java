@@ -0,0 +1,73 @@
+package pl.morph.ai.snake.engine;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Magnitude pruning of a trained network. The smallest weights are zeroed in steps of
+ * {@code 1 / STEPS} of all weights for as long as the pruned network still makes the same decision
+ * as the original on at least {@code minAgreement} of the sample inputs. Biases are never pruned.
+ */
+public final class NetworkPruner {
+    static final int STEPS = 50;
+
+    private NetworkPruner() {
+    }
+
+    /**
+     * Returns a pruned copy of {@code network}, the original is left untouched.
+     *
+     * @param inputs       sample visions, e.g. recorded with {@link EpisodeRunner}
+     * @param minAgreement lowest accepted share of inputs on which the decision stays the same, 0 to 1
+     */
+    public static NeuralNetwork prune(NeuralNetwork network, List<double[]> inputs, double minAgreement) {
+        int[] decisions = new int[inputs.size()];
+        for (int k = 0; k < decisions.length; k++) {
+            decisions[k] = network.decide(inputs.get(k));
+        }
+
+        int total = 0;
+        for (Matrix w : network.weights) {
+            total += w.rows * (w.cols - 1);
+        }
+        double[] magnitudes = new double[total];
+        int k = 0;
+        for (Matrix w : network.weights) {
+            for (int i = 0; i < w.rows; i++) {
+                for (int j = 0; j < w.cols - 1; j++) {
+                    magnitudes[k++] = Math.abs(w.get(i, j));
+                }
+            }
+        }
+        Arrays.sort(magnitudes);
+
+        NeuralNetwork best = network.clone();
+        for (int step = 1; step <= STEPS; step++) {
+            // Networks with fewer weights than STEPS prune one weight (or none) per step
+            int index = total * step / STEPS - 1;
+            if (index < 0) {
+                continue;
+            }
+            NeuralNetwork candidate = pruneAtOrBelow(network, magnitudes[index]);
+            if (PolicyComparison.agreement(decisions, candidate, inputs) < minAgreement) {
+                break;
+            }
+            best = candidate;
+        }
+        return best;
+    }
+
+    private static NeuralNetwork pruneAtOrBelow(NeuralNetwork network, double threshold) {
+        NeuralNetwork pruned = network.clone();
+        for (Matrix w : pruned.weights) {
+            for (int i = 0; i < w.rows; i++) {
+                for (int j = 0; j < w.cols - 1; j++) {
+                    if (Math.abs(w.get(i, j)) <= threshold) {
+                        w.set(i, j, 0);
+                    }
+                }
+            }
+        }
+        return pruned;
+    }
+}
@@ -0,0 +1,220 @@
+package pl.morph.ai.snake.engine;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Generates, compiles and loads a {@link SpecializedNetwork} for every topology it is asked for.
+ * <p>
+ * The generated class has the layer sizes as constants: every dot product is fully unrolled with constant
+ * weight offsets, and the activations stay at fixed scratch positions. Sums are accumulated in the same order
+ * as {@link ScalarDenseKernel}, so the decisions are identical to the generic path with the scalar kernel. Next to
+ * the Vector API kernel they can differ where two outputs nearly tie, see {@link DenseKernel}.
+ * <p>
+ * Needs the system Java compiler (a JDK, not a JRE). Without it, or with {@code -Dsnake.specialize=false},
+ * {@link #get(NeuralNetwork)} returns null and networks keep using the generic {@link DenseKernel}.
+ * Double networks also keep the generic path when the Vector API kernel is active, it is faster than the
+ * unrolled scalar code there (see {@code DecideBenchmark}).
+ */
+public final class NetworkSpecializer {
+    static final String PACKAGE = "pl.morph.ai.snake.engine.generated";
+
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("snake.specialize"));
+    // Compiled classes by class name, null for a topology that could not be compiled. Guarded by compile()
+    private static final Map<String, SpecializedNetwork> CACHE = new HashMap<String, SpecializedNetwork>();
+    // Topology asked for last and its class, so a decision finds it without building a key or a map lookup
+    private static volatile Resolved last;
+
+    private NetworkSpecializer() {
+    }
+
+    /**
+     * The specialized class for the topology of {@code network}, compiled on first use, or null when unavailable.
+     */
+    public static SpecializedNetwork get(NeuralNetwork network) {
+        if (!ENABLED || (network.precision == Precision.DOUBLE && DenseKernels.get() != DenseKernels.scalar())) {
+            return null;
+        }
+        Resolved resolved = last;
+        if (resolved == null || !resolved.matches(network.iNodes, network.hNodes, network.oNodes, network.hLayers)) {
+            resolved = new Resolved(network.iNodes, network.hNodes, network.oNodes, network.hLayers,
+                    compile(network.iNodes, network.hNodes, network.oNodes, network.hLayers));
+            last = resolved;
+        }
+        return resolved.specialized;
+    }
+
+    static SpecializedNetwork forTopology(int input, int hidden, int output, int hiddenLayers) {
+        return compile(input, hidden, output, hiddenLayers);
+    }
+
+    private static synchronized SpecializedNetwork compile(int input, int hidden, int output, int hiddenLayers) {
+        String name = className(input, hidden, output, hiddenLayers);
+        if (CACHE.containsKey(name)) {
+            return CACHE.get(name);
+        }
+        SpecializedNetwork specialized;
+        try {
+            specialized = load(name, generate(name, input, hidden, output, hiddenLayers));
+            System.out.println("Specialized network: " + input + "-" + hidden + "-" + output + " x" + hiddenLayers);
+        } catch (Throwable e) {
+            System.out.println("Specialized network not available, using the generic kernel: " + e);
+            specialized = null;
+        }
+        CACHE.put(name, specialized);
+        return specialized;
+    }
+
+    private static final class Resolved {
+        final int input;
+        final int hidden;
+        final int output;
+        final int hiddenLayers;
+        final SpecializedNetwork specialized;
+
+        Resolved(int input, int hidden, int output, int hiddenLayers, SpecializedNetwork specialized) {
+            this.input = input;
+            this.hidden = hidden;
+            this.output = output;
+            this.hiddenLayers = hiddenLayers;
+            this.specialized = specialized;
+        }
+
+        boolean matches(int input, int hidden, int output, int hiddenLayers) {
+            return this.input == input && this.hidden == hidden && this.output == output
+                    && this.hiddenLayers == hiddenLayers;
+        }
+    }
+
+    static String className(int input, int hidden, int output, int hiddenLayers) {
+        return "Network_" + input + "_" + hidden + "_" + output + "_" + hiddenLayers;
+    }
+
+    static String generate(String name, int input, int hidden, int output, int hiddenLayers) {
+        StringBuilder code = new StringBuilder();
+        code.append("package ").append(PACKAGE).append(";\n\n");
+        code.append("public final class ").append(name).append(" implements ")
+                .append(SpecializedNetwork.class.getName()).append(" {\n");
+        generateDecide(code, "double", input, hidden, output, hiddenLayers);
+        generateDecide(code, "float", input, hidden, output, hiddenLayers);
+        code.append("}\n");
+        return code.toString();
+    }
+
+    // Same scratch layout as NeuralNetwork.output: hidden layers ping-pong between 0 and hidden, logits at 2 * hidden
+    private static void generateDecide(StringBuilder code, String type, int input, int hidden, int output,
+                                       int hiddenLayers) {
+        code.append("\n    public int decide(").append(type).append("[][] w, int[] o, double[] in, ")
+                .append(type).append("[] s) {\n");
+        for (int l = 0; l <= hiddenLayers; l++) {
+            code.append("        final ").append(type).append("[] w").append(l).append(" = w[").append(l).append("];\n");
+            code.append("        final int o").append(l).append(" = o[").append(l).append("];\n");
+        }
+
+        for (int l = 0; l <= hiddenLayers; l++) {
+            boolean last = l == hiddenLayers;
+            int rows = last ? output : hidden;
+            int inputs = l == 0 ? input : hidden;
+            int inOffset = ((l - 1) & 1) * hidden;
+            int outOffset = last ? 2 * hidden : (l & 1) * hidden;
+
+            code.append("        for (int i = 0; i < ").append(rows).append("; i++) {\n");
+            code.append("            final int b = o").append(l).append(" + i * ").append(inputs + 1).append(";\n");
+            code.append("            ").append(type).append(" v = 0;\n");
+            for (int j = 0; j < inputs; j++) {
+                code.append("            v += w").append(l).append("[b + ").append(j).append("] * ");
+                if (l == 0) {
+                    code.append(type.equals("float") ? "(float) " : "").append("in[").append(j).append("];\n");
+                } else {
+                    code.append("s[").append(inOffset + j).append("];\n");
+                }
+            }
+            code.append("            v += w").append(l).append("[b + ").append(inputs).append("];\n");
+            code.append("            s[").append(outOffset).append(" + i] = ")
+                    .append(last ? "v" : "v > 0 ? v : 0").append(";\n");
+            code.append("        }\n");
+        }
+
+        int logits = 2 * hidden;
+        code.append("        int best = 0;\n");
+        code.append("        ").append(type).append(" max = s[").append(logits).append("];\n");
+        for (int i = 1; i < output; i++) {
+            code.append("        if (s[").append(logits + i).append("] > max) {\n");
+            code.append("            max = s[").append(logits + i).append("];\n");
+            code.append("            best = ").append(i).append(";\n");
+            code.append("        }\n");
+        }
+        code.append("        return best;\n");
+        code.append("    }\n");
+    }
+
+    private static SpecializedNetwork load(String name, final String source) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("no system Java compiler, running on a JRE");
+        }
+        final String className = PACKAGE + "." + name;
+        final Map<String, ByteArrayOutputStream> classes = new HashMap<String, ByteArrayOutputStream>();
+
+        StandardJavaFileManager standard = compiler.getStandardFileManager(null, null, null);
+        JavaFileManager fileManager = new ForwardingJavaFileManager<JavaFileManager>(standard) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, final String name,
+                                                       JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + name.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        classes.put(name, bytes);
+                        return bytes;
+                    }
+                };
+            }
+        };
+        JavaFileObject file = new SimpleJavaFileObject(
+                URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        // The interface has to be visible to javac, the surefire and IDE class paths do not always list it
+        String classPath = new File(SpecializedNetwork.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        StringWriter errors = new StringWriter();
+        Boolean compiled = compiler.getTask(errors, fileManager, null,
+                Arrays.asList("-classpath", classPath, "-g:none", "-nowarn"), null, Arrays.asList(file)).call();
+        fileManager.close();
+        if (!Boolean.TRUE.equals(compiled)) {
+            throw new IllegalStateException("compilation failed: " + errors);
+        }
+
+        ClassLoader loader = new ClassLoader(SpecializedNetwork.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                ByteArrayOutputStream bytes = classes.get(name);
+                if (bytes == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                byte[] code = bytes.toByteArray();
+                return defineClass(name, code, 0, code.length);
+            }
+        };
+        return (SpecializedNetwork) loader.loadClass(className).getDeclaredConstructor().newInstance();
+    }
+}
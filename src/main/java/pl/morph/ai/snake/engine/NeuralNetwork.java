@@ -1,29 +1,79 @@
 package pl.morph.ai.snake.engine;
 
 import java.awt.*;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
-public class NeuralNetwork implements Serializable {
+public class NeuralNetwork implements Policy, Serializable {
     private static final long serialVersionUID = -2824217385197224301L;
 
+    // Rows per tile of the batched decide(), small enough for the tile's activations to stay in L1 next to the weights
+    static final int BATCH_TILE = 32;
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
     private double highestFitness = 0;
 
     int iNodes, hNodes, oNodes, hLayers;
+    // Saved with the network so a population reloads in the precision it was trained in
+    Precision precision;
     Matrix[] weights;
+    private transient double[][] layerData;
+    private transient float[][] layerFloats;
+    private transient int[] layerOffsets;
 
     public NeuralNetwork(int input, int hidden, int output, int hiddenLayers) {
+        this(input, hidden, output, hiddenLayers, Precision.DOUBLE);
+    }
+
+    public NeuralNetwork(int input, int hidden, int output, int hiddenLayers, Precision precision) {
+        this(input, hidden, output, hiddenLayers, precision, true);
+    }
+
+    /**
+     * @param randomize false leaves every weight at zero, for networks about to be filled by
+     *                  {@link #copyInto(NeuralNetwork)} or {@link #crossoverInto(NeuralNetwork, NeuralNetwork)}
+     */
+    public NeuralNetwork(int input, int hidden, int output, int hiddenLayers, Precision precision, boolean randomize) {
         iNodes = input;
         hNodes = hidden;
         oNodes = output;
         hLayers = hiddenLayers;
+        this.precision = precision;
 
         weights = new Matrix[hLayers+1];
-        weights[0] = new Matrix(hNodes, iNodes+1);
+        weights[0] = new Matrix(hNodes, iNodes+1, precision);
         for(int i=1; i<hLayers; i++) {
-            weights[i] = new Matrix(hNodes,hNodes+1);
+            weights[i] = new Matrix(hNodes,hNodes+1, precision);
         }
-        weights[weights.length-1] = new Matrix(oNodes,hNodes+1);
+        weights[weights.length-1] = new Matrix(oNodes,hNodes+1, precision);
+
+        if (randomize) {
+            for(Matrix w : weights) {
+                w.randomize();
+            }
+        }
+    }
+
+    /**
+     * Network over existing matrices, e.g. views into a {@link GenomeArena} slab. Weights are left as they are.
+     */
+    NeuralNetwork(int input, int hidden, int output, int hiddenLayers, Precision precision, Matrix[] weights) {
+        iNodes = input;
+        hNodes = hidden;
+        oNodes = output;
+        hLayers = hiddenLayers;
+        this.precision = precision;
+        this.weights = weights;
+    }
 
+    void randomize() {
         for(Matrix w : weights) {
             w.randomize();
         }
@@ -36,37 +86,291 @@ public class NeuralNetwork implements Serializable {
     }
 
     public double[] output(double[] inputsArr) {
-        Matrix inputs = weights[0].singleColumnMatrixFromArray(inputsArr);
+        double[] output = new double[oNodes];
+        output(inputsArr, output);
+        return output;
+    }
+
+    /**
+     * Same as {@link #output(double[])} but writes the probabilities into {@code output}
+     * and runs on this thread's scratch buffer, so nothing is allocated in steady state.
+     */
+    public void output(double[] inputsArr, double[] output) {
+        if (precision == Precision.FLOAT) {
+            output(inputsArr, output, SCRATCH.get().floats(floatScratchSize()));
+        } else {
+            output(inputsArr, output, SCRATCH.get().buffer(scratchSize()));
+        }
+    }
+
+    /**
+     * Allocation free forward pass using a caller supplied scratch buffer of at least {@link #scratchSize()} values.
+     * A {@link Precision#FLOAT} network runs on this thread's float scratch instead.
+     */
+    public void output(double[] inputsArr, double[] output, double[] scratch) {
+        if (precision == Precision.FLOAT) {
+            output(inputsArr, output, SCRATCH.get().floats(floatScratchSize()));
+            return;
+        }
+        Matrix.softmax(logits(inputsArr, scratch), 2 * hNodes, output, oNodes);
+    }
+
+    /**
+     * Forward pass of a {@link Precision#FLOAT} network with a caller supplied scratch buffer of at least
+     * {@link #floatScratchSize()} values. The inputs are narrowed to float once, at the start of the buffer.
+     */
+    public void output(double[] inputsArr, double[] output, float[] scratch) {
+        if (precision != Precision.FLOAT) {
+            throw new IllegalStateException("Network is in " + precision + " precision");
+        }
+        Matrix.softmax(logits(inputsArr, scratch), iNodes + 2 * hNodes, output, oNodes);
+    }
+
+    /**
+     * Index of the winning output for {@code inputsArr}, taken straight from the output layer logits.
+     * Softmax is monotonic, so this is the argmax of {@link #output(double[])} without the exp and
+     * normalization work. Uses the {@link NetworkSpecializer} class for this topology when one could be
+     * compiled, the generic kernel otherwise. Runs on this thread's scratch buffer.
+     */
+    public int decide(double[] inputsArr) {
+        SpecializedNetwork specialized = NetworkSpecializer.get(this);
+        if (specialized != null) {
+            if (precision == Precision.FLOAT) {
+                return specialized.decide(layerFloats(), layerOffsets(), inputsArr, SCRATCH.get().floats(scratchSize()));
+            }
+            return specialized.decide(layerData(), layerOffsets(), inputsArr, SCRATCH.get().buffer(scratchSize()));
+        }
+        return decideGeneric(inputsArr);
+    }
+
+    // decide() through the DenseKernel, also the baseline of DecideBenchmark
+    int decideGeneric(double[] inputsArr) {
+        DenseKernel kernel = DenseKernels.get();
+        if (precision == Precision.FLOAT) {
+            float[] logits = logits(inputsArr, SCRATCH.get().floats(floatScratchSize()));
+            return kernel.argmax(logits, iNodes + 2 * hNodes, oNodes);
+        }
+        double[] logits = logits(inputsArr, SCRATCH.get().buffer(scratchSize()));
+        return kernel.argmax(logits, 2 * hNodes, oNodes);
+    }
+
+    /**
+     * Decisions for many inputs at once, e.g. one champion over many parallel episodes.
+     */
+    public int[] decide(double[][] inputs) {
+        int[] decisions = new int[inputs.length];
+        decide(inputs, decisions, 0, inputs.length);
+        return decisions;
+    }
+
+    /**
+     * Writes the decision for {@code inputs[k]} into {@code decisions[k]}, for every {@code k} in {@code [from, to)}.
+     * The rows are stacked into tiles of {@link #BATCH_TILE} and every layer is one matrix-matrix product over the
+     * tile: each weight is loaded once and applied to the whole tile, and the layer's weights stay in cache until
+     * the tile has passed. Every row is summed in the order of the scalar kernel, so the decisions are those of
+     * {@link #decide(double[])} with the scalar kernel; with the Vector API kernel, or the specialized class on top of
+     * it, they can differ where two outputs nearly tie. Runs on this thread's scratch buffer.
+     */
+    public void decide(double[][] inputs, int[] decisions, int from, int to) {
+        DenseKernel kernel = DenseKernels.get();
+        boolean single = precision == Precision.FLOAT;
+        // Feature-major tile, value k of row b at k * BATCH_TILE + b: inputs, two hidden regions to ping-pong between, logits
+        int hiddenBase = BATCH_TILE * iNodes;
+        int logitsBase = hiddenBase + 2 * BATCH_TILE * hNodes;
+        int size = logitsBase + BATCH_TILE * oNodes;
+        double[] buffer = single ? null : SCRATCH.get().buffer(size);
+        float[] floats = single ? SCRATCH.get().floats(size) : null;
+
+        for (int tileStart = from; tileStart < to; tileStart += BATCH_TILE) {
+            int count = Math.min(BATCH_TILE, to - tileStart);
+            for (int b = 0; b < count; b++) {
+                double[] in = inputs[tileStart + b];
+                for (int j = 0; j < iNodes; j++) {
+                    if (single) {
+                        floats[j * BATCH_TILE + b] = (float) in[j];
+                    } else {
+                        buffer[j * BATCH_TILE + b] = in[j];
+                    }
+                }
+            }
 
-        Matrix curr_bias = inputs.addBias();
+            int inBase = 0;
+            for (int l = 0; l <= hLayers; l++) {
+                boolean last = l == hLayers;
+                Matrix w = weights[l];
+                int outBase = last ? logitsBase : hiddenBase + (l & 1) * BATCH_TILE * hNodes;
+                if (single) {
+                    kernel.denseBatch(w.floats, w.offset, w.rows, w.cols, floats, inBase, floats, outBase, BATCH_TILE, count, !last);
+                } else {
+                    kernel.denseBatch(w.data, w.offset, w.rows, w.cols, buffer, inBase, buffer, outBase, BATCH_TILE, count, !last);
+                }
+                inBase = outBase;
+            }
+
+            for (int b = 0; b < count; b++) {
+                decisions[tileStart + b] = single ? argmax(floats, logitsBase + b) : argmax(buffer, logitsBase + b);
+            }
+        }
+    }
+
+    // First largest of the oNodes logits of one tile row, BATCH_TILE apart
+    private int argmax(double[] tile, int offset) {
+        int maxIndex = 0;
+        for (int i = 1; i < oNodes; i++) {
+            if (tile[offset + i * BATCH_TILE] > tile[offset + maxIndex * BATCH_TILE]) {
+                maxIndex = i;
+            }
+        }
+        return maxIndex;
+    }
+
+    private int argmax(float[] tile, int offset) {
+        int maxIndex = 0;
+        for (int i = 1; i < oNodes; i++) {
+            if (tile[offset + i * BATCH_TILE] > tile[offset + maxIndex * BATCH_TILE]) {
+                maxIndex = i;
+            }
+        }
+        return maxIndex;
+    }
+
+    // Weight arrays handed to the specialized class, refreshed on every call since load() can replace matrices
+    private double[][] layerData() {
+        double[][] layers = layerData;
+        if (layers == null) {
+            layers = new double[weights.length][];
+            layerData = layers;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            layers[i] = weights[i].data;
+        }
+        return layers;
+    }
+
+    private int[] layerOffsets() {
+        int[] offsets = layerOffsets;
+        if (offsets == null) {
+            offsets = new int[weights.length];
+            layerOffsets = offsets;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            offsets[i] = weights[i].offset;
+        }
+        return offsets;
+    }
+
+    private float[][] layerFloats() {
+        float[][] layers = layerFloats;
+        if (layers == null) {
+            layers = new float[weights.length][];
+            layerFloats = layers;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            layers[i] = weights[i].floats;
+        }
+        return layers;
+    }
+
+    public int scratchSize() {
+        return 2 * hNodes + oNodes;
+    }
+
+    public int floatScratchSize() {
+        return iNodes + 2 * hNodes + oNodes;
+    }
+
+    // Hidden activations ping-pong between scratch[0, hNodes) and scratch[hNodes, 2 * hNodes), logits follow them
+    private double[] logits(double[] inputsArr, double[] scratch) {
+        double[] curr = inputsArr;
+        int currOffset = 0;
 
         for(int i=0; i<hLayers; i++) {
-            Matrix hidden_ip = weights[i].dot(curr_bias);
-            Matrix hidden_op = hidden_ip.activate();
-            curr_bias = hidden_op.addBias();
+            int hiddenOffset = (i & 1) * hNodes;
+            weights[i].feedForward(curr, currOffset, scratch, hiddenOffset, true);
+            curr = scratch;
+            currOffset = hiddenOffset;
         }
 
-        Matrix output_ip = weights[weights.length-1].dot(curr_bias);
-        Matrix output = output_ip.softmax();
+        weights[weights.length-1].feedForward(curr, currOffset, scratch, 2 * hNodes, false);
+        return scratch;
+    }
+
+    // Same layout as the double version, shifted by the narrowed inputs in scratch[0, iNodes)
+    private float[] logits(double[] inputsArr, float[] scratch) {
+        for (int i = 0; i < iNodes; i++) {
+            scratch[i] = (float) inputsArr[i];
+        }
+        int currOffset = 0;
+
+        for(int i=0; i<hLayers; i++) {
+            int hiddenOffset = iNodes + (i & 1) * hNodes;
+            weights[i].feedForward(scratch, currOffset, scratch, hiddenOffset, true);
+            currOffset = hiddenOffset;
+        }
+
+        weights[weights.length-1].feedForward(scratch, currOffset, scratch, iNodes + 2 * hNodes, false);
+        return scratch;
+    }
 
-        return output.toArray();
+    /**
+     * Index of the largest value, the first one on ties.
+     */
+    public static int argmax(double[] values) {
+        return DenseKernels.get().argmax(values, 0, values.length);
     }
 
     public NeuralNetwork crossover(NeuralNetwork partner) {
-        NeuralNetwork child = new NeuralNetwork(iNodes,hNodes,oNodes,hLayers);
+        NeuralNetwork child = new NeuralNetwork(iNodes,hNodes,oNodes,hLayers,precision,false);
+        crossoverInto(partner, child);
+        return child;
+    }
+
+    /**
+     * Writes the crossover of this network and {@code partner} into {@code child} without allocating.
+     * All three share one topology, {@code child} keeps its precision and starts with no recorded fitness.
+     */
+    public void crossoverInto(NeuralNetwork partner, NeuralNetwork child) {
         for(int i=0; i<weights.length; i++) {
-            child.weights[i] = weights[i].crossover(partner.weights[i]);
+            weights[i].crossoverInto(partner.weights[i], child.weights[i]);
         }
-        return child;
+        child.highestFitness = 0;
     }
 
     public NeuralNetwork clone() {
-        NeuralNetwork clone = new NeuralNetwork(iNodes,hNodes,oNodes,hLayers);
+        NeuralNetwork clone = new NeuralNetwork(iNodes,hNodes,oNodes,hLayers,precision,false);
+        copyInto(clone);
+        return clone;
+    }
+
+    /**
+     * Copies the weights into {@code dest} of the same topology without allocating. As with {@link #clone()},
+     * {@code dest} starts with no recorded fitness; it keeps its own precision.
+     */
+    public void copyInto(NeuralNetwork dest) {
         for(int i=0; i<weights.length; i++) {
-            clone.weights[i] = weights[i].clone();
+            weights[i].copyInto(dest.weights[i]);
         }
+        dest.highestFitness = 0;
+    }
 
-        return clone;
+    /**
+     * Returns this network if it already has the given precision, otherwise a converted copy.
+     */
+    public NeuralNetwork toPrecision(Precision target) {
+        if (target == precision) {
+            return this;
+        }
+        NeuralNetwork converted = clone();
+        converted.precision = target;
+        for(int i=0; i<weights.length; i++) {
+            converted.weights[i] = weights[i].toPrecision(target);
+        }
+        converted.highestFitness = highestFitness;
+        return converted;
+    }
+
+    public Precision getPrecision() {
+        return precision;
     }
 
     public void load(Matrix[] weight) {
@@ -104,10 +408,8 @@ public class NeuralNetwork implements Serializable {
 
     private int getColor(Matrix m) {
         double sum = 0.0;
-        for (double[] matrix : m.matrix) {
-            for (double matrix2 : matrix) {
-                sum += matrix2;
-            }
+        for (int i = 0; i < m.size(); i++) {
+            sum += m.data != null ? m.data[m.offset + i] : m.floats[m.offset + i];
         }
 
         if (sum < 0) {
@@ -128,4 +430,32 @@ public class NeuralNetwork implements Serializable {
         return (int) src;
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (precision == null) {
+            precision = Precision.DOUBLE;
+        }
+    }
+
+    /**
+     * Per-thread inference buffers, grown to the largest network seen by the thread.
+     */
+    private static final class Scratch {
+        private double[] buffer = new double[0];
+        private float[] floats = new float[0];
+
+        double[] buffer(int size) {
+            if (buffer.length < size) {
+                buffer = new double[size];
+            }
+            return buffer;
+        }
+
+        float[] floats(int size) {
+            if (floats.length < size) {
+                floats = new float[size];
+            }
+            return floats;
+        }
+    }
 }
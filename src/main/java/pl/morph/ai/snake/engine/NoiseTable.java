@@ -0,0 +1,36 @@
+package pl.morph.ai.snake.engine;
+
+import java.util.Random;
+
+/**
+ * Large block of standard Gaussian noise generated once from a fixed seed. Every process builds exactly the same
+ * table, so a genome can refer to noise by position instead of carrying the values.
+ */
+public final class NoiseTable {
+    static final long SEED = 0x5EEDL;
+    static final int SIZE = 1 << 20;
+
+    private static final NoiseTable SHARED = new NoiseTable(SEED, SIZE);
+
+    private final float[] noise;
+
+    NoiseTable(long seed, int size) {
+        noise = new float[size];
+        Random random = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            noise[i] = (float) random.nextGaussian();
+        }
+    }
+
+    public static NoiseTable shared() {
+        return SHARED;
+    }
+
+    public float get(int index) {
+        return noise[index];
+    }
+
+    public int size() {
+        return noise.length;
+    }
+}
@@ -0,0 +1,20 @@
+package pl.morph.ai.snake.engine;
+
+import pl.morph.ai.snake.element.Snake;
+
+import java.util.List;
+
+/**
+ * Turns an evaluated generation into the genomes of the next one. {@link SimulationEngine} keeps slot 0 of every
+ * generation for the replay of its best snake and lets the optimizer fill the rest.
+ */
+public interface Optimizer {
+
+    /**
+     * @param generation snakes of the finished generation with their fitness calculated, best first
+     * @param next       networks of the next generation, {@code next[from]} up to the end are overwritten
+     */
+    void breed(List<Snake> generation, NeuralNetwork[] next, int from);
+
+    String name();
+}
@@ -0,0 +1,8 @@
+package pl.morph.ai.snake.engine;
+
+/**
+ * Anything that can steer a snake: maps a vision vector to a decision (0 left, 1 right, 2 forward).
+ */
+public interface Policy {
+    int decide(double[] inputs);
+}
@@ -0,0 +1,92 @@
+package pl.morph.ai.snake.engine;
+
+import pl.morph.ai.snake.element.Snake;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.List;
+
+/**
+ * Helpers shared by the reports that compare a compressed {@link Policy} with the network it was made from.
+ */
+public final class PolicyComparison {
+
+    // Written after each measurement so the decisions are not optimized away
+    private static volatile long sink;
+
+    private PolicyComparison() {
+    }
+
+    /**
+     * Brain of the snake with the highest fitness in a saved population.
+     */
+    @SuppressWarnings("unchecked")
+    public static NeuralNetwork loadBestBrain(String file) throws IOException, ClassNotFoundException {
+        List<Snake> snakes;
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
+            snakes = (List<Snake>) in.readObject();
+        }
+        Snake best = snakes.get(0);
+        for (Snake snake : snakes) {
+            if (snake.getHighestFitness() > best.getHighestFitness()) {
+                best = snake;
+            }
+        }
+        return best.getBrain();
+    }
+
+    /**
+     * Number of inputs on which both policies make the same decision.
+     */
+    public static int agreement(Policy a, Policy b, List<double[]> inputs) {
+        int agreed = 0;
+        for (double[] input : inputs) {
+            if (a.decide(input) == b.decide(input)) {
+                agreed++;
+            }
+        }
+        return agreed;
+    }
+
+    /**
+     * Share of inputs for which {@code policy} repeats the recorded decision, {@code decisions[k]}
+     * belonging to {@code inputs.get(k)}.
+     */
+    static double agreement(int[] decisions, Policy policy, List<double[]> inputs) {
+        int agreed = 0;
+        for (int k = 0; k < decisions.length; k++) {
+            if (policy.decide(inputs.get(k)) == decisions[k]) {
+                agreed++;
+            }
+        }
+        return decisions.length == 0 ? 1 : (double) agreed / decisions.length;
+    }
+
+    static int sizeInBytes(NeuralNetwork network) {
+        int bytes = 0;
+        for (Matrix w : network.weights) {
+            bytes += w.size() * (network.getPrecision() == Precision.FLOAT ? 4 : 8);
+        }
+        return bytes;
+    }
+
+    static double decisionsPerSecond(Policy policy, List<double[]> inputs) {
+        long total = 0;
+        for (int warmup = 0; warmup < 5; warmup++) {
+            for (double[] input : inputs) {
+                total += policy.decide(input);
+            }
+        }
+        int rounds = 10;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (double[] input : inputs) {
+                total += policy.decide(input);
+            }
+        }
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        sink = total;
+        return rounds * inputs.size() * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,248 @@
+package pl.morph.ai.snake.engine;
+
+import java.util.List;
+
+/**
+ * Forward pass for a whole population sharing one topology, over slots that refer to the networks' own weights.
+ * <p>
+ * Snakes are evaluated in blocks of {@link #BLOCK}, every layer runs over the whole block before the next one
+ * starts. Every snake has weights of its own, so this is still one dense product per snake and layer: no weight
+ * is reused across snakes and the speed is that of deciding snake by snake ({@code PopulationStepBenchmark}).
+ * <p>
+ * {@link #pack(List)} only records references, the networks must not be replaced or reloaded while packed.
+ */
+public class PopulationInference {
+    static final int BLOCK = 32;
+
+    private int iNodes, hNodes, oNodes, hLayers;
+    private Precision precision;
+    private int[] rows, cols;
+    // Layer l of slot s starts at offsets[s][l] of layers[s][l] (or floatLayers[s][l]), the arrays of the network
+    // itself, only the ones matching the packed precision are in use
+    private double[][][] layers = new double[0][][];
+    private float[][][] floatLayers = new float[0][][];
+    private int[][] offsets = new int[0][];
+    private int capacity;
+    private int count;
+    // Class of NetworkSpecializer for the packed topology, null when decisions take the blocked pass
+    private SpecializedNetwork specialized;
+
+    private final ThreadLocal<double[]> scratch = new ThreadLocal<double[]>();
+    private final ThreadLocal<float[]> floatScratch = new ThreadLocal<float[]>();
+
+    /**
+     * Makes slot {@code i} refer to the weights of {@code brains.get(i)}, without copying them.
+     * The topology and precision are taken from the first network.
+     *
+     * @return false if the networks do not all share one topology and precision, nothing is packed in that case
+     */
+    public boolean pack(List<NeuralNetwork> brains) {
+        count = 0;
+        if (brains.isEmpty()) {
+            return false;
+        }
+        NeuralNetwork first = brains.get(0);
+        for (NeuralNetwork brain : brains) {
+            if (brain.iNodes != first.iNodes || brain.hNodes != first.hNodes
+                    || brain.oNodes != first.oNodes || brain.hLayers != first.hLayers
+                    || brain.precision != first.precision) {
+                return false;
+            }
+        }
+
+        if (rows == null || first.iNodes != iNodes || first.hNodes != hNodes
+                || first.oNodes != oNodes || first.hLayers != hLayers || first.precision != precision) {
+            setTopology(first.iNodes, first.hNodes, first.oNodes, first.hLayers, first.precision);
+        }
+        ensureCapacity(brains.size());
+        for (int s = 0; s < brains.size(); s++) {
+            Matrix[] weights = brains.get(s).weights;
+            for (int l = 0; l <= hLayers; l++) {
+                if (precision == Precision.FLOAT) {
+                    floatLayers[s][l] = weights[l].floats;
+                } else {
+                    layers[s][l] = weights[l].data;
+                }
+                offsets[s][l] = weights[l].offset;
+            }
+        }
+        specialized = NetworkSpecializer.get(first);
+        count = brains.size();
+        return true;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Writes the softmax output of slot {@code slots[k]} for input {@code inputs[k]} into {@code outputs[k]},
+     * for every {@code k} in {@code [from, to)}. Safe to call concurrently on disjoint ranges.
+     */
+    public void output(int[] slots, double[][] inputs, double[][] outputs, int from, int to) {
+        forward(slots, inputs, outputs, null, from, to);
+    }
+
+    /**
+     * Writes the index of the winning output of slot {@code slots[k]} for input {@code inputs[k]} into
+     * {@code decisions[k]}, for every {@code k} in {@code [from, to)}. Takes the argmax of the logits, so no
+     * softmax is computed. Goes through the {@link NetworkSpecializer} class snake by snake when
+     * {@link NeuralNetwork#decide(double[])} would use it, through the blocked pass otherwise. Safe to call
+     * concurrently on disjoint ranges.
+     */
+    public void decide(int[] slots, double[][] inputs, int[] decisions, int from, int to) {
+        if (specialized == null) {
+            forward(slots, inputs, null, decisions, from, to);
+            return;
+        }
+        if (precision == Precision.FLOAT) {
+            float[] buffer = floatBuffer();
+            for (int k = from; k < to; k++) {
+                decisions[k] = specialized.decide(floatLayers[slots[k]], offsets[slots[k]], inputs[k], buffer);
+            }
+        } else {
+            double[] buffer = buffer();
+            for (int k = from; k < to; k++) {
+                decisions[k] = specialized.decide(layers[slots[k]], offsets[slots[k]], inputs[k], buffer);
+            }
+        }
+    }
+
+    // Exactly one of outputs (softmax) and decisions (argmax) is non-null
+    private void forward(int[] slots, double[][] inputs, double[][] outputs, int[] decisions, int from, int to) {
+        if (precision == Precision.FLOAT) {
+            forwardFloat(slots, inputs, outputs, decisions, from, to);
+            return;
+        }
+        DenseKernel kernel = DenseKernels.get();
+        double[] buffer = buffer();
+        int hiddenStride = hNodes;
+        int logitsBase = 2 * BLOCK * hNodes;
+
+        for (int blockStart = from; blockStart < to; blockStart += BLOCK) {
+            int blockEnd = Math.min(blockStart + BLOCK, to);
+
+            for (int l = 0; l <= hLayers; l++) {
+                boolean last = l == hLayers;
+                int r = rows[l];
+                int c = cols[l];
+                int inBase = ((l - 1) & 1) * BLOCK * hNodes;
+                int outBase = last ? logitsBase : (l & 1) * BLOCK * hNodes;
+                int outStride = last ? oNodes : hiddenStride;
+
+                for (int k = blockStart; k < blockEnd; k++) {
+                    int b = k - blockStart;
+                    double[] in = l == 0 ? inputs[k] : buffer;
+                    int inOffset = l == 0 ? 0 : inBase + b * hiddenStride;
+                    int outOffset = outBase + b * outStride;
+                    kernel.dense(layers[slots[k]][l], offsets[slots[k]][l], r, c, in, inOffset, buffer, outOffset, !last);
+                }
+            }
+
+            for (int k = blockStart; k < blockEnd; k++) {
+                int logits = logitsBase + (k - blockStart) * oNodes;
+                if (decisions != null) {
+                    decisions[k] = kernel.argmax(buffer, logits, oNodes);
+                } else {
+                    Matrix.softmax(buffer, logits, outputs[k], oNodes);
+                }
+            }
+        }
+    }
+
+    // Float twin of forward(): inputs are narrowed into the block's input region before the first layer
+    private void forwardFloat(int[] slots, double[][] inputs, double[][] outputs, int[] decisions, int from, int to) {
+        int inputBase = 2 * BLOCK * hNodes;
+        int logitsBase = inputBase + BLOCK * iNodes;
+        float[] buffer = floatBuffer();
+        DenseKernel kernel = DenseKernels.get();
+
+        for (int blockStart = from; blockStart < to; blockStart += BLOCK) {
+            int blockEnd = Math.min(blockStart + BLOCK, to);
+
+            for (int k = blockStart; k < blockEnd; k++) {
+                double[] in = inputs[k];
+                int offset = inputBase + (k - blockStart) * iNodes;
+                for (int j = 0; j < iNodes; j++) {
+                    buffer[offset + j] = (float) in[j];
+                }
+            }
+
+            for (int l = 0; l <= hLayers; l++) {
+                boolean last = l == hLayers;
+                int r = rows[l];
+                int c = cols[l];
+                int inBase = l == 0 ? inputBase : ((l - 1) & 1) * BLOCK * hNodes;
+                int outBase = last ? logitsBase : (l & 1) * BLOCK * hNodes;
+                int outStride = last ? oNodes : hNodes;
+
+                for (int k = blockStart; k < blockEnd; k++) {
+                    int b = k - blockStart;
+                    int inOffset = inBase + b * (c - 1);
+                    int outOffset = outBase + b * outStride;
+                    kernel.dense(floatLayers[slots[k]][l], offsets[slots[k]][l], r, c, buffer, inOffset, buffer, outOffset, !last);
+                }
+            }
+
+            for (int k = blockStart; k < blockEnd; k++) {
+                int logits = logitsBase + (k - blockStart) * oNodes;
+                if (decisions != null) {
+                    decisions[k] = kernel.argmax(buffer, logits, oNodes);
+                } else {
+                    Matrix.softmax(buffer, logits, outputs[k], oNodes);
+                }
+            }
+        }
+    }
+
+    // This thread's block of activations, BLOCK rows of two hidden regions and the logits
+    private double[] buffer() {
+        double[] buffer = scratch.get();
+        if (buffer == null || buffer.length < BLOCK * (2 * hNodes + oNodes)) {
+            buffer = new double[BLOCK * (2 * hNodes + oNodes)];
+            scratch.set(buffer);
+        }
+        return buffer;
+    }
+
+    // Float twin of buffer(), with a region for the narrowed inputs between the hidden ones and the logits
+    private float[] floatBuffer() {
+        float[] buffer = floatScratch.get();
+        if (buffer == null || buffer.length < BLOCK * (2 * hNodes + iNodes + oNodes)) {
+            buffer = new float[BLOCK * (2 * hNodes + iNodes + oNodes)];
+            floatScratch.set(buffer);
+        }
+        return buffer;
+    }
+
+    private void setTopology(int input, int hidden, int output, int hiddenLayers, Precision precision) {
+        iNodes = input;
+        hNodes = hidden;
+        oNodes = output;
+        hLayers = hiddenLayers;
+        this.precision = precision;
+
+        rows = new int[hLayers + 1];
+        cols = new int[hLayers + 1];
+        for (int i = 0; i <= hLayers; i++) {
+            rows[i] = i == hLayers ? oNodes : hNodes;
+            cols[i] = (i == 0 ? iNodes : hNodes) + 1;
+        }
+        capacity = 0;
+    }
+
+    private void ensureCapacity(int snakes) {
+        if (snakes <= capacity) {
+            return;
+        }
+        if (precision == Precision.FLOAT) {
+            floatLayers = new float[snakes][hLayers + 1][];
+            layers = new double[0][][];
+        } else {
+            layers = new double[snakes][hLayers + 1][];
+            floatLayers = new float[0][][];
+        }
+        offsets = new int[snakes][hLayers + 1];
+        capacity = snakes;
+    }
+}
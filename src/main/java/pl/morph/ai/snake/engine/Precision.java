@@ -0,0 +1,20 @@
+package pl.morph.ai.snake.engine;
+
+/**
+ * Storage and arithmetic precision of a {@link NeuralNetwork}.
+ */
+public enum Precision {
+    DOUBLE,
+    FLOAT;
+
+    /**
+     * Reads the {@code snake.precision} system property ({@code double} or {@code float}), defaulting to {@link #DOUBLE}.
+     */
+    public static Precision fromSystemProperty() {
+        String value = System.getProperty("snake.precision", "double");
+        if ("float".equalsIgnoreCase(value) || "float32".equalsIgnoreCase(value)) {
+            return FLOAT;
+        }
+        return DOUBLE;
+    }
+}
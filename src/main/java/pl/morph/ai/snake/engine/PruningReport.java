@@ -0,0 +1,54 @@
+package pl.morph.ai.snake.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prunes the best snake of a save with {@link NetworkPruner} and compares the resulting {@link SparseNetwork}
+ * with the dense network: stored weights, size, speed, score and decision agreement.
+ * <p>
+ * Usage: {@code java -cp SnakeAi.jar pl.morph.ai.snake.engine.PruningReport best.ser [minAgreement] [episodes]}
+ */
+public class PruningReport {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: PruningReport <snakes.ser> [minAgreement] [episodes]");
+            return;
+        }
+        double minAgreement = args.length > 1 ? Double.parseDouble(args[1]) : 0.99;
+        int episodes = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        if (minAgreement < 0 || minAgreement > 1 || episodes <= 0) {
+            System.out.println("minAgreement must be within 0 and 1 and episodes positive: " + minAgreement + ", " + episodes);
+            return;
+        }
+
+        NeuralNetwork brain = PolicyComparison.loadBestBrain(args[0]);
+        EpisodeRunner runner = new EpisodeRunner();
+        List<double[]> visions = new ArrayList<double[]>();
+        long fullScore = 0;
+        for (int e = 0; e < episodes; e++) {
+            fullScore += runner.play(brain, brain, visions);
+        }
+        if (visions.isEmpty()) {
+            System.out.println("The network made no decision in " + episodes + " episodes, nothing to prune against");
+            return;
+        }
+
+        SparseNetwork sparse = new SparseNetwork(NetworkPruner.prune(brain, visions, minAgreement));
+        long sparseScore = 0;
+        for (int e = 0; e < episodes; e++) {
+            sparseScore += runner.play(brain, sparse, null);
+        }
+
+        int weights = new SparseNetwork(brain).nonZeros();
+        int agreed = PolicyComparison.agreement(brain, sparse, visions);
+        System.out.println("Network:      " + weights + " weights, " + PolicyComparison.sizeInBytes(brain) + " bytes");
+        System.out.println("Pruned:       " + sparse.nonZeros() + " weights, " + sparse.sizeInBytes() + " bytes");
+        System.out.println("Agreement:    " + agreed + " / " + visions.size() + String.format(" (%.2f%%)", 100.0 * agreed / visions.size()));
+        System.out.println(String.format("Mean score:   %.2f dense, %.2f pruned over %d episodes",
+                (double) fullScore / episodes, (double) sparseScore / episodes, episodes));
+        System.out.println(String.format("Decisions/s:  %.0f dense, %.0f pruned",
+                PolicyComparison.decisionsPerSecond(brain, visions), PolicyComparison.decisionsPerSecond(sparse, visions)));
+    }
+}
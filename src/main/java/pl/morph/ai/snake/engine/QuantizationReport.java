@@ -0,0 +1,51 @@
+package pl.morph.ai.snake.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the best snake of a save with its {@link QuantizedNetwork}: size, speed, score,
+ * and how often both make the same decision on the visions the full network saw.
+ * <p>
+ * Usage: {@code java -cp SnakeAi.jar pl.morph.ai.snake.engine.QuantizationReport best.ser [episodes]}
+ */
+public class QuantizationReport {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: QuantizationReport <snakes.ser> [episodes]");
+            return;
+        }
+        int episodes = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        if (episodes <= 0) {
+            System.out.println("Episodes must be positive: " + episodes);
+            return;
+        }
+
+        NeuralNetwork brain = PolicyComparison.loadBestBrain(args[0]);
+        QuantizedNetwork quantized = new QuantizedNetwork(brain);
+
+        EpisodeRunner runner = new EpisodeRunner();
+        List<double[]> visions = new ArrayList<double[]>();
+        long fullScore = 0;
+        long quantizedScore = 0;
+        for (int e = 0; e < episodes; e++) {
+            fullScore += runner.play(brain, brain, visions);
+            quantizedScore += runner.play(brain, quantized, null);
+        }
+
+        if (visions.isEmpty()) {
+            System.out.println("The network made no decision in " + episodes + " episodes, nothing to compare");
+            return;
+        }
+
+        int agreed = PolicyComparison.agreement(brain, quantized, visions);
+        System.out.println("Network:      " + brain.getPrecision() + ", " + PolicyComparison.sizeInBytes(brain) + " bytes");
+        System.out.println("Quantized:    int8, " + quantized.sizeInBytes() + " bytes");
+        System.out.println("Agreement:    " + agreed + " / " + visions.size() + String.format(" (%.2f%%)", 100.0 * agreed / visions.size()));
+        System.out.println(String.format("Mean score:   %.2f full, %.2f quantized over %d episodes",
+                (double) fullScore / episodes, (double) quantizedScore / episodes, episodes));
+        System.out.println(String.format("Decisions/s:  %.0f full, %.0f quantized",
+                PolicyComparison.decisionsPerSecond(brain, visions), PolicyComparison.decisionsPerSecond(quantized, visions)));
+    }
+}
@@ -0,0 +1,138 @@
+package pl.morph.ai.snake.engine;
+
+import java.io.Serializable;
+
+/**
+ * Int8 copy of a trained {@link NeuralNetwork} for replay and evaluation.
+ * <p>
+ * Every row of every layer keeps its weights as bytes with one float scale ({@code w ~ q * scale}),
+ * the bias stays a float. Activations are quantized per layer on the fly with a single scale, so each
+ * neuron is one integer dot product followed by one multiply and the bias.
+ */
+public class QuantizedNetwork implements Policy, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private final int iNodes, hNodes, oNodes, hLayers;
+    private final int[] rows, inputs;
+    // weights[l] is row-major without the bias column, rows[l] x inputs[l]
+    private final byte[][] weights;
+    private final float[][] scales;
+    private final float[][] biases;
+
+    public QuantizedNetwork(NeuralNetwork source) {
+        iNodes = source.iNodes;
+        hNodes = source.hNodes;
+        oNodes = source.oNodes;
+        hLayers = source.hLayers;
+
+        int layers = source.weights.length;
+        rows = new int[layers];
+        inputs = new int[layers];
+        weights = new byte[layers][];
+        scales = new float[layers][];
+        biases = new float[layers][];
+        for (int l = 0; l < layers; l++) {
+            Matrix m = source.weights[l];
+            int n = m.cols - 1;
+            rows[l] = m.rows;
+            inputs[l] = n;
+            weights[l] = new byte[m.rows * n];
+            scales[l] = new float[m.rows];
+            biases[l] = new float[m.rows];
+            for (int i = 0; i < m.rows; i++) {
+                double max = 0;
+                for (int j = 0; j < n; j++) {
+                    max = Math.max(max, Math.abs(m.get(i, j)));
+                }
+                double scale = max > 0 ? max / 127 : 1;
+                for (int j = 0; j < n; j++) {
+                    weights[l][i * n + j] = clamp(Math.round(m.get(i, j) / scale));
+                }
+                scales[l][i] = (float) scale;
+                biases[l][i] = (float) m.get(i, n);
+            }
+        }
+    }
+
+    public int decide(double[] inputsArr) {
+        Scratch scratch = SCRATCH.get();
+        scratch.ensure(Math.max(iNodes, Math.max(hNodes, oNodes)));
+        float[] curr = scratch.a;
+        for (int i = 0; i < iNodes; i++) {
+            curr[i] = (float) inputsArr[i];
+        }
+        byte[] q = scratch.q;
+
+        for (int l = 0; l <= hLayers; l++) {
+            boolean last = l == hLayers;
+            int n = inputs[l];
+            float inScale = quantize(curr, n, q);
+            byte[] w = weights[l];
+            float[] scale = scales[l];
+            float[] bias = biases[l];
+            float[] next = curr == scratch.a ? scratch.b : scratch.a;
+
+            for (int i = 0; i < rows[l]; i++) {
+                int base = i * n;
+                int dot = 0;
+                for (int j = 0; j < n; j++) {
+                    dot += w[base + j] * q[j];
+                }
+                float value = dot * scale[i] * inScale + bias[i];
+                next[i] = !last && value < 0 ? 0 : value;
+            }
+            curr = next;
+        }
+        return DenseKernels.get().argmax(curr, 0, oNodes);
+    }
+
+    /**
+     * Bytes taken by the weights, scales and biases.
+     */
+    public int sizeInBytes() {
+        int bytes = 0;
+        for (int l = 0; l < weights.length; l++) {
+            bytes += weights[l].length + 4 * (scales[l].length + biases[l].length);
+        }
+        return bytes;
+    }
+
+    // Symmetric quantization of values[0, n) into q, returns the scale
+    private static float quantize(float[] values, int n, byte[] q) {
+        float max = 0;
+        for (int j = 0; j < n; j++) {
+            max = Math.max(max, Math.abs(values[j]));
+        }
+        float scale = max > 0 ? max / 127 : 1;
+        float inverse = 1 / scale;
+        for (int j = 0; j < n; j++) {
+            q[j] = clamp(Math.round(values[j] * inverse));
+        }
+        return scale;
+    }
+
+    private static byte clamp(long value) {
+        return (byte) Math.max(-127, Math.min(127, value));
+    }
+
+    private static final class Scratch {
+        private float[] a = new float[0];
+        private float[] b = new float[0];
+        private byte[] q = new byte[0];
+
+        void ensure(int size) {
+            if (a.length < size) {
+                a = new float[size];
+                b = new float[size];
+                q = new byte[size];
+            }
+        }
+    }
+}
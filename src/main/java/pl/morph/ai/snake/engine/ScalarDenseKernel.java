@@ -0,0 +1,140 @@
+package pl.morph.ai.snake.engine;
+
+/**
+ * Plain Java kernel, used on runtimes without the Vector API.
+ */
+class ScalarDenseKernel implements DenseKernel {
+
+    public void dense(double[] w, int wOffset, int rows, int cols,
+                      double[] in, int inOffset, double[] out, int outOffset, boolean relu) {
+        int inputs = cols - 1;
+        for (int i = 0; i < rows; i++) {
+            int rowOffset = wOffset + i * cols;
+            double sum = 0;
+            for (int k = 0; k < inputs; k++) {
+                sum += w[rowOffset + k] * in[inOffset + k];
+            }
+            sum += w[rowOffset + inputs];
+            out[outOffset + i] = relu ? Math.max(0, sum) : sum;
+        }
+    }
+
+    public void dense(float[] w, int wOffset, int rows, int cols,
+                      float[] in, int inOffset, float[] out, int outOffset, boolean relu) {
+        int inputs = cols - 1;
+        for (int i = 0; i < rows; i++) {
+            int rowOffset = wOffset + i * cols;
+            float sum = 0;
+            for (int k = 0; k < inputs; k++) {
+                sum += w[rowOffset + k] * in[inOffset + k];
+            }
+            sum += w[rowOffset + inputs];
+            out[outOffset + i] = relu ? Math.max(0f, sum) : sum;
+        }
+    }
+
+    // Four rows of the batch share every weight load, each summing in its own register
+    public void denseBatch(double[] w, int wOffset, int rows, int cols, double[] in, int inOffset,
+                           double[] out, int outOffset, int stride, int count, boolean relu) {
+        int inputs = cols - 1;
+        for (int i = 0; i < rows; i++) {
+            int rowOffset = wOffset + i * cols;
+            int o = outOffset + i * stride;
+            double bias = w[rowOffset + inputs];
+            int b = 0;
+            for (; b + 4 <= count; b += 4) {
+                double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+                for (int k = 0; k < inputs; k++) {
+                    double weight = w[rowOffset + k];
+                    int x = inOffset + k * stride + b;
+                    s0 += weight * in[x];
+                    s1 += weight * in[x + 1];
+                    s2 += weight * in[x + 2];
+                    s3 += weight * in[x + 3];
+                }
+                s0 += bias;
+                s1 += bias;
+                s2 += bias;
+                s3 += bias;
+                out[o + b] = relu ? Math.max(0, s0) : s0;
+                out[o + b + 1] = relu ? Math.max(0, s1) : s1;
+                out[o + b + 2] = relu ? Math.max(0, s2) : s2;
+                out[o + b + 3] = relu ? Math.max(0, s3) : s3;
+            }
+            for (; b < count; b++) {
+                double sum = 0;
+                for (int k = 0; k < inputs; k++) {
+                    sum += w[rowOffset + k] * in[inOffset + k * stride + b];
+                }
+                sum += bias;
+                out[o + b] = relu ? Math.max(0, sum) : sum;
+            }
+        }
+    }
+
+    public void denseBatch(float[] w, int wOffset, int rows, int cols, float[] in, int inOffset,
+                           float[] out, int outOffset, int stride, int count, boolean relu) {
+        int inputs = cols - 1;
+        for (int i = 0; i < rows; i++) {
+            int rowOffset = wOffset + i * cols;
+            int o = outOffset + i * stride;
+            float bias = w[rowOffset + inputs];
+            int b = 0;
+            for (; b + 4 <= count; b += 4) {
+                float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+                for (int k = 0; k < inputs; k++) {
+                    float weight = w[rowOffset + k];
+                    int x = inOffset + k * stride + b;
+                    s0 += weight * in[x];
+                    s1 += weight * in[x + 1];
+                    s2 += weight * in[x + 2];
+                    s3 += weight * in[x + 3];
+                }
+                s0 += bias;
+                s1 += bias;
+                s2 += bias;
+                s3 += bias;
+                out[o + b] = relu ? Math.max(0f, s0) : s0;
+                out[o + b + 1] = relu ? Math.max(0f, s1) : s1;
+                out[o + b + 2] = relu ? Math.max(0f, s2) : s2;
+                out[o + b + 3] = relu ? Math.max(0f, s3) : s3;
+            }
+            for (; b < count; b++) {
+                float sum = 0;
+                for (int k = 0; k < inputs; k++) {
+                    sum += w[rowOffset + k] * in[inOffset + k * stride + b];
+                }
+                sum += bias;
+                out[o + b] = relu ? Math.max(0f, sum) : sum;
+            }
+        }
+    }
+
+    public int argmax(double[] values, int offset, int length) {
+        int maxIndex = 0;
+        double max = values[offset];
+        for (int i = 1; i < length; i++) {
+            if (values[offset + i] > max) {
+                max = values[offset + i];
+                maxIndex = i;
+            }
+        }
+        return maxIndex;
+    }
+
+    public int argmax(float[] values, int offset, int length) {
+        int maxIndex = 0;
+        float max = values[offset];
+        for (int i = 1; i < length; i++) {
+            if (values[offset + i] > max) {
+                max = values[offset + i];
+                maxIndex = i;
+            }
+        }
+        return maxIndex;
+    }
+
+    public String name() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,263 @@
+package pl.morph.ai.snake.engine;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Genome stored as its lineage: the seed of the random initial weights plus the (seed, rate) of every mutation
+ * applied since. The weights are rebuilt on demand from these seeds and the shared {@link NoiseTable}, a genome
+ * with {@code n} mutations takes {@code 8 + 12 * n} bytes of state instead of one value per weight.
+ * <p>
+ * Mutations behave like {@link Matrix#mutate(double)}: each weight mutates with probability {@code rate}
+ * (positions are drawn by geometric skips), a mutated weight is reset to a uniform value 10% of the time,
+ * otherwise it moves by table noise / 5 and is clamped to [-1, 1]. Only mutation is representable, crossover
+ * needs both parents' weights and stays with {@link NeuralNetwork}.
+ * <p>
+ * Materialized networks are kept in a bounded LRU cache ({@code -Dsnake.genomeCache}, default 256), keyed by
+ * lineage prefix. A child is built from its cached parent by applying just its last mutation. Callers always get
+ * their own copy, the cached networks are never handed out.
+ */
+public final class SeedGenome implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final int CACHE_SIZE = Integer.getInteger("snake.genomeCache", 256);
+
+    private static final Map<Lineage, NeuralNetwork> CACHE = new LinkedHashMap<Lineage, NeuralNetwork>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Lineage, NeuralNetwork> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final int iNodes, hNodes, oNodes, hLayers;
+    private final Precision precision;
+    private final long initSeed;
+    private final long[] mutationSeeds;
+    private final float[] mutationRates;
+    // Hash of every lineage prefix, index k covers the first k mutations
+    private transient int[] prefixHashes;
+
+    private SeedGenome(int input, int hidden, int output, int hiddenLayers, Precision precision,
+                       long initSeed, long[] mutationSeeds, float[] mutationRates) {
+        iNodes = input;
+        hNodes = hidden;
+        oNodes = output;
+        hLayers = hiddenLayers;
+        this.precision = precision;
+        this.initSeed = initSeed;
+        this.mutationSeeds = mutationSeeds;
+        this.mutationRates = mutationRates;
+    }
+
+    /**
+     * Genome of a network with weights drawn uniformly from [-1, 1) by {@code seed}.
+     */
+    public static SeedGenome random(int input, int hidden, int output, int hiddenLayers, Precision precision, long seed) {
+        return new SeedGenome(input, hidden, output, hiddenLayers, precision, seed, new long[0], new float[0]);
+    }
+
+    /**
+     * Child genome: this lineage plus one mutation step.
+     */
+    public SeedGenome mutate(long seed, double rate) {
+        int n = mutationSeeds.length;
+        long[] seeds = Arrays.copyOf(mutationSeeds, n + 1);
+        float[] rates = Arrays.copyOf(mutationRates, n + 1);
+        seeds[n] = seed;
+        rates[n] = (float) rate;
+        return new SeedGenome(iNodes, hNodes, oNodes, hLayers, precision, initSeed, seeds, rates);
+    }
+
+    public int mutations() {
+        return mutationSeeds.length;
+    }
+
+    /**
+     * Bytes of lineage state, the seeds and rates.
+     */
+    public int encodedBytes() {
+        return 8 + 12 * mutationSeeds.length;
+    }
+
+    /**
+     * The weights of this genome in a new network of its own.
+     */
+    public NeuralNetwork materialize() {
+        NeuralNetwork network = new NeuralNetwork(iNodes, hNodes, oNodes, hLayers, precision, false);
+        materializeInto(network);
+        return network;
+    }
+
+    /**
+     * Copies the weights of this genome into {@code dest} of the same topology, see
+     * {@link NeuralNetwork#copyInto(NeuralNetwork)}.
+     */
+    public void materializeInto(NeuralNetwork dest) {
+        int n = mutationSeeds.length;
+        // Longest cached prefix of the lineage, from the whole genome back
+        int cached = n;
+        NeuralNetwork network = cached(new Lineage(this, cached));
+        while (network == null && cached > 0) {
+            cached--;
+            network = cached(new Lineage(this, cached));
+        }
+        if (network != null && cached == n) {
+            network.copyInto(dest);
+            return;
+        }
+
+        NeuralNetwork result = new NeuralNetwork(iNodes, hNodes, oNodes, hLayers, precision, false);
+        if (network != null) {
+            network.copyInto(result);
+        } else {
+            initialize(result, initSeed);
+        }
+        for (int step = cached; step < n; step++) {
+            applyMutation(result, mutationSeeds[step], mutationRates[step], NoiseTable.shared());
+        }
+
+        synchronized (CACHE) {
+            CACHE.put(new Lineage(this, n), result);
+        }
+        result.copyInto(dest);
+    }
+
+    private static NeuralNetwork cached(Lineage lineage) {
+        synchronized (CACHE) {
+            return CACHE.get(lineage);
+        }
+    }
+
+    static int cacheSize() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    private static void initialize(NeuralNetwork network, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (Matrix w : network.weights) {
+            int end = w.offset + w.size();
+            for (int i = w.offset; i < end; i++) {
+                double value = random.nextDouble() * 2 - 1;
+                if (w.data != null) {
+                    w.data[i] = value;
+                } else {
+                    w.floats[i] = (float) value;
+                }
+            }
+        }
+    }
+
+    // Walks the flattened weights of all layers with geometric skips, as Matrix.mutate does per layer
+    private static void applyMutation(NeuralNetwork network, long seed, double rate, NoiseTable noise) {
+        double logKeep = Math.log1p(-rate);
+        if (rate <= 0 || logKeep == 0) {
+            return;
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        int layer = 0;
+        int layerStart = 0;
+        // Same gap sampler as Matrix.mutate, its gaps are capped so the position cannot overflow
+        for (long position = -1; ; ) {
+            position += 1 + Matrix.nextGap(logKeep, random.nextDouble());
+            while (layer < network.weights.length && position >= layerStart + network.weights[layer].size()) {
+                layerStart += network.weights[layer].size();
+                layer++;
+            }
+            if (layer == network.weights.length) {
+                return;
+            }
+            Matrix w = network.weights[layer];
+            int index = w.offset + (int) (position - layerStart);
+            double value = w.data != null ? w.data[index] : w.floats[index];
+            if (random.nextDouble() < 0.1) {
+                value = random.nextDouble() * 2 - 1;
+            } else {
+                value = Math.max(-1, Math.min(1, value + noise.get(random.nextInt(noise.size())) / 5.0));
+            }
+            if (w.data != null) {
+                w.data[index] = value;
+            } else {
+                w.floats[index] = (float) value;
+            }
+        }
+    }
+
+    private int[] prefixHashes() {
+        int[] hashes = prefixHashes;
+        if (hashes == null) {
+            hashes = new int[mutationSeeds.length + 1];
+            int result = (int) (initSeed ^ (initSeed >>> 32));
+            result = 31 * result + precision.ordinal();
+            hashes[0] = result;
+            for (int i = 0; i < mutationSeeds.length; i++) {
+                long seed = mutationSeeds[i];
+                result = 31 * result + (int) (seed ^ (seed >>> 32));
+                result = 31 * result + Float.floatToIntBits(mutationRates[i]);
+                hashes[i + 1] = result;
+            }
+            prefixHashes = hashes;
+        }
+        return hashes;
+    }
+
+    // Same topology and seed, and the same first length mutations
+    private boolean samePrefix(SeedGenome that, int length) {
+        if (initSeed != that.initSeed || iNodes != that.iNodes || hNodes != that.hNodes || oNodes != that.oNodes
+                || hLayers != that.hLayers || precision != that.precision) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (mutationSeeds[i] != that.mutationSeeds[i]
+                    || Float.floatToIntBits(mutationRates[i]) != Float.floatToIntBits(that.mutationRates[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SeedGenome that = (SeedGenome) o;
+        return mutationSeeds.length == that.mutationSeeds.length && samePrefix(that, mutationSeeds.length);
+    }
+
+    @Override
+    public int hashCode() {
+        return prefixHashes()[mutationSeeds.length];
+    }
+
+    /**
+     * Cache key for the first {@code length} mutations of a genome's lineage, without copying it.
+     */
+    private static final class Lineage {
+        private final SeedGenome genome;
+        private final int length;
+        private final int hash;
+
+        Lineage(SeedGenome genome, int length) {
+            this.genome = genome;
+            this.length = length;
+            this.hash = genome.prefixHashes()[length];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Lineage)) return false;
+            Lineage that = (Lineage) o;
+            return length == that.length && hash == that.hash && genome.samePrefix(that.genome, length);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -14,8 +14,6 @@ public class SimulationEngine implements Runnable {
 
     public static final int B_WIDTH = 800;
     public static final int B_HEIGHT = 800;
-    private static final int ELITISM_COUNT = 5;
-    private static final int TOURNAMENT_SIZE = 5;
 
     private volatile List<Snake> snakes;
     private Snake bestSnake;
@@ -32,19 +30,32 @@ public class SimulationEngine implements Runnable {
     private volatile boolean saveWaiting = false;
     private volatile String fileName = null;
 
-    // GA parameters (volatile for cross-thread visibility)
-    private volatile double mutationRate = 0.03;
-    private volatile double crossoverRate = 0.9;
-    private volatile double saveSnakeRatio = 0.5;
+    // GA parameters live in the genetic optimizer, which keeps them even while another optimizer runs
+    private final GeneticOptimizer genetic = new GeneticOptimizer();
+    private Optimizer optimizer = selectOptimizer();
+    private NeuralNetwork[] nextBrains = new NeuralNetwork[0];
     private volatile double avgFitness = 0;
     private volatile boolean autoSave = false;
-    private volatile boolean bestOnly = false;
+    private volatile Precision precision = Precision.fromSystemProperty();
 
     // Volatile flags
     private volatile boolean running;
     private volatile boolean visualMode = true;
 
     private ExecutorService executor;
+    private int workers = 1;
+
+    // Stacked weights of the current generation, repacked whenever the snake list is replaced
+    private final PopulationInference population = new PopulationInference();
+    private List<Snake> packedSnakes;
+    private boolean batched;
+    private int[] aliveSlots = new int[0];
+    private double[][] aliveInputs = new double[0][];
+    private int[] aliveDecisions = new int[0];
+    // Current and next generation's genomes and snakes, created by the first naturalSelection
+    private GenomeArena arena;
+    // Optional memory-mapped copy of every generation's genomes, -Dsnake.checkpoint=<file>
+    private GenomeStore checkpoint;
 
     private JPanel boardPanel;
     private Scores scores;
@@ -55,6 +66,49 @@ public class SimulationEngine implements Runnable {
         this.boardPanel = boardPanel;
         this.walls = WallManager.prepareWalls(dotSize, B_WIDTH, B_HEIGHT);
         createAISnakes();
+        openCheckpoint();
+    }
+
+    // -Dsnake.optimizer=es switches from the genetic algorithm to evolution strategies
+    private Optimizer selectOptimizer() {
+        Optimizer selected = genetic;
+        if ("es".equalsIgnoreCase(System.getProperty("snake.optimizer"))) {
+            selected = new EvolutionStrategies(0.1, 0.03, System.nanoTime());
+        }
+        System.out.println("Optimizer: " + selected.name());
+        return selected;
+    }
+
+    // Maps the checkpoint file and resumes from the generation it holds, if any
+    private void openCheckpoint() {
+        String path = System.getProperty("snake.checkpoint");
+        if (path == null || path.isEmpty() || snakes.isEmpty()) {
+            return;
+        }
+        try {
+            checkpoint = GenomeStore.open(new File(path), snakes.get(0).getBrain(), precision, aiSnakeCount);
+            int restored = Math.min(checkpoint.size(), snakes.size());
+            for (int i = 0; i < restored; i++) {
+                checkpoint.read(i, snakes.get(i).getBrain());
+            }
+            if (restored > 0) {
+                scores.setGeneration((int) checkpoint.getGeneration());
+                System.out.println("Restored " + restored + " genomes of generation " + checkpoint.getGeneration() + " from " + path);
+            }
+        } catch (IOException e) {
+            System.out.println("Checkpoint not available: " + e.getMessage());
+            checkpoint = null;
+        }
+    }
+
+    private void writeCheckpoint() {
+        List<Snake> current = snakes;
+        int count = Math.min(current.size(), checkpoint.capacity());
+        for (int i = 0; i < count; i++) {
+            checkpoint.write(i, current.get(i).getBrain());
+        }
+        checkpoint.setSize(count);
+        checkpoint.setGeneration(scores.getGeneration());
     }
 
     private void createAISnakes() {
@@ -62,7 +116,8 @@ public class SimulationEngine implements Runnable {
 
         for (int i = 0; i < aiSnakeCount; i++) {
             Snake snake = new Snake(B_WIDTH, B_HEIGHT, delay, false, null, dotSize, walls);
-            snake.setMutationRate(mutationRate);
+            snake.setMutationRate(genetic.getMutationRate());
+            snake.setBrain(snake.getBrain().toPrecision(precision));
             placeSnakeRandomly(snake);
             if (showOnlyFirstSnake) {
                 if (newSnakes.size() == 0) {
@@ -78,10 +133,7 @@ public class SimulationEngine implements Runnable {
     }
 
     public void placeSnakeRandomly(Snake snake) {
-        List<Snake.XY> boardList = snake.populate(B_WIDTH / dotSize, B_HEIGHT / dotSize);
-        int index = (int) (Math.random() * boardList.size());
-        Snake.XY xy = boardList.get(index);
-        snake.setStartingPosition(xy);
+        snake.setRandomStartingPosition();
     }
 
     private void simulateTickParallel() throws InterruptedException {
@@ -89,8 +141,12 @@ public class SimulationEngine implements Runnable {
 
         // Collect alive snakes for parallel processing
         final List<Snake> currentSnakes = snakes;
-        List<Snake> aliveSnakes = new ArrayList<Snake>();
-        for (Snake snake : currentSnakes) {
+        if (packedSnakes != currentSnakes) {
+            packPopulation(currentSnakes);
+        }
+        final List<Snake> aliveSnakes = new ArrayList<Snake>();
+        for (int i = 0; i < currentSnakes.size(); i++) {
+            Snake snake = currentSnakes.get(i);
             if (snake.getScore() == ((B_HEIGHT / dotSize) * (B_WIDTH / dotSize)) - 1) {
                 running = false;
             }
@@ -98,20 +154,27 @@ public class SimulationEngine implements Runnable {
                 scores.setScore((new Score()).setScore(snake.getScore()));
             }
             if (snake.inGame) {
+                aliveSlots[aliveSnakes.size()] = i;
                 aliveSnakes.add(snake);
             } else {
                 scores.incrementDeadSnakes();
             }
         }
 
-        // Create parallel tasks for each alive snake
+        // One task per worker over a contiguous slice of alive snakes, so each worker
+        // reuses its thread-local inference scratch for the whole slice
         List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
-        for (final Snake snake : aliveSnakes) {
+        int chunk = (aliveSnakes.size() + workers - 1) / workers;
+        for (int start = 0; start < aliveSnakes.size(); start += chunk) {
+            final int from = start;
+            final int to = Math.min(start + chunk, aliveSnakes.size());
             tasks.add(new Callable<Void>() {
                 public Void call() {
-                    snake.look();
-                    snake.think();
-                    snake.move();
+                    if (batched) {
+                        stepBatched(aliveSnakes, from, to);
+                    } else {
+                        stepEach(aliveSnakes, from, to);
+                    }
                     return null;
                 }
             });
@@ -120,13 +183,12 @@ public class SimulationEngine implements Runnable {
         // Execute all tasks in parallel and wait for completion
         if (!tasks.isEmpty()) {
             List<Future<Void>> futures = executor.invokeAll(tasks);
-            for (int i = 0; i < futures.size(); i++) {
+            for (Future<Void> future : futures) {
                 try {
-                    futures.get(i).get();
+                    future.get();
                 } catch (ExecutionException e) {
                     System.err.println("Snake task failed: " + e.getCause());
                     e.getCause().printStackTrace();
-                    aliveSnakes.get(i).inGame = false;
                 }
             }
         }
@@ -157,6 +219,70 @@ public class SimulationEngine implements Runnable {
             if (autoSave && saveWaiting) {
                 autoSave();
             }
+            if (checkpoint != null) {
+                writeCheckpoint();
+            }
+        }
+    }
+
+    private void stepEach(List<Snake> aliveSnakes, int from, int to) {
+        for (int k = from; k < to; k++) {
+            Snake snake = aliveSnakes.get(k);
+            try {
+                snake.look();
+                snake.think();
+                snake.move();
+            } catch (RuntimeException e) {
+                snakeFailed(snake, e);
+            }
+        }
+    }
+
+    // look() for the whole slice, one batched decision pass, then act() and move()
+    private void stepBatched(List<Snake> aliveSnakes, int from, int to) {
+        for (int k = from; k < to; k++) {
+            Snake snake = aliveSnakes.get(k);
+            try {
+                snake.look();
+            } catch (RuntimeException e) {
+                snakeFailed(snake, e);
+            }
+            aliveInputs[k] = snake.getVision();
+        }
+
+        population.decide(aliveSlots, aliveInputs, aliveDecisions, from, to);
+
+        for (int k = from; k < to; k++) {
+            Snake snake = aliveSnakes.get(k);
+            if (!snake.inGame) {
+                continue;
+            }
+            try {
+                snake.act(aliveDecisions[k]);
+                snake.move();
+            } catch (RuntimeException e) {
+                snakeFailed(snake, e);
+            }
+        }
+    }
+
+    private void snakeFailed(Snake snake, RuntimeException e) {
+        System.err.println("Snake task failed: " + e);
+        e.printStackTrace();
+        snake.inGame = false;
+    }
+
+    private void packPopulation(List<Snake> currentSnakes) {
+        List<NeuralNetwork> brains = new ArrayList<NeuralNetwork>(currentSnakes.size());
+        for (Snake snake : currentSnakes) {
+            brains.add(snake.getBrain());
+        }
+        batched = population.pack(brains);
+        packedSnakes = currentSnakes;
+        if (aliveSlots.length < currentSnakes.size()) {
+            aliveSlots = new int[currentSnakes.size()];
+            aliveInputs = new double[currentSnakes.size()][];
+            aliveDecisions = new int[currentSnakes.size()];
         }
     }
 
@@ -177,52 +303,31 @@ public class SimulationEngine implements Runnable {
         setBestSnake();
         calculateFitnessSum();
 
+        if (arena == null || !arena.fits(bestSnake.getBrain(), precision, aiSnakeCount)) {
+            arena = new GenomeArena(bestSnake.getBrain(), precision, aiSnakeCount);
+        }
+
         // Add best snake clone for replay (preserves foodList for replay)
-        Snake best = bestSnake.cloneForReplay();
+        NeuralNetwork replayBrain = arena.nextBrain(0);
+        bestSnake.getBrain().copyInto(replayBrain);
+        Snake best = bestSnake.cloneForReplay(replayBrain);
         best.setBestSnake(true);
         best.setScores(scores);
         best.setShowIt(true);
         best.spawnApple();
         newSnakes.add(best);
 
-        // Elitism: carry top snakes unmodified (no mutation) into next generation
-        for (int i = 0; i < Math.min(ELITISM_COUNT, snakes.size()) && newSnakes.size() < aiSnakeCount; i++) {
-            Snake elite = snakes.get(i);
-            NeuralNetwork brain = elite.getBrain().clone();
-            Snake eliteSnake = new Snake(B_WIDTH, B_HEIGHT, delay, false, null, dotSize, walls);
-            eliteSnake.setMutationRate(mutationRate);
-            eliteSnake.setBrain(brain);
-            eliteSnake.setBestSnake(false);
-            eliteSnake.setScores(null);
-            placeSnakeRandomly(eliteSnake);
-            if (!showOnlyFirstSnake) {
-                eliteSnake.setShowIt(true);
-            }
-            eliteSnake.spawnApple();
-            newSnakes.add(eliteSnake);
+        if (nextBrains.length != aiSnakeCount) {
+            nextBrains = new NeuralNetwork[aiSnakeCount];
+        }
+        for (int i = 0; i < aiSnakeCount; i++) {
+            nextBrains[i] = arena.nextBrain(i);
         }
+        // The rest is written straight into the next generation's slab
+        optimizer.breed(snakes, nextBrains, newSnakes.size());
 
-        // Fill rest with crossover + mutation
         while (newSnakes.size() < aiSnakeCount) {
-            Snake parent1 = tournamentSelect();
-            Snake parent2 = tournamentSelect();
-
-            Snake child;
-            double rand = Matrix.random(0, 1);
-            if (rand < crossoverRate) {
-                child = parent1.crossover(parent2);
-            } else {
-                child = parent1.cloneThis();
-            }
-
-            child.mutate();
-
-            NeuralNetwork brain = child.getBrain();
-            child = new Snake(B_WIDTH, B_HEIGHT, delay, false, null, dotSize, walls);
-            child.setMutationRate(mutationRate);
-            child.setBrain(brain);
-            child.setBestSnake(false);
-            child.setScores(null);
+            Snake child = recycledSnake(newSnakes.size(), nextBrains[newSnakes.size()]);
             placeSnakeRandomly(child);
             if (!showOnlyFirstSnake) {
                 child.setShowIt(true);
@@ -232,9 +337,25 @@ public class SimulationEngine implements Runnable {
         }
 
         snakes = newSnakes;
+        arena.swap();
         scores.increseGeneration();
     }
 
+    // The snake that used this arena slot two generations ago, reset to carry brain
+    private Snake recycledSnake(int slot, NeuralNetwork brain) {
+        Snake snake = arena.nextSnake(slot);
+        if (snake == null) {
+            snake = new Snake(B_WIDTH, B_HEIGHT, delay, false, null, dotSize, walls, brain);
+            arena.setNextSnake(slot, snake);
+        } else {
+            snake.reset(brain);
+        }
+        snake.setMutationRate(genetic.getMutationRate());
+        snake.setBestSnake(false);
+        snake.setScores(null);
+        return snake;
+    }
+
     private void calculateFitnessSum() {
         fitnessSum = 0;
         for (Snake snake : snakes) {
@@ -243,22 +364,6 @@ public class SimulationEngine implements Runnable {
         avgFitness = fitnessSum / snakes.size();
     }
 
-    private Snake tournamentSelect() {
-        if (bestOnly) {
-            return snakes.get(0);
-        }
-        int poolSize = Math.max(1, (int) (snakes.size() * saveSnakeRatio));
-        Snake best = null;
-        for (int i = 0; i < TOURNAMENT_SIZE; i++) {
-            int idx = (int) (Math.random() * poolSize);
-            Snake candidate = snakes.get(idx);
-            if (best == null || candidate.getFitness() > best.getFitness()) {
-                best = candidate;
-            }
-        }
-        return best;
-    }
-
     private void setBestSnake() {
         int bestScoreIdx = 0;
         double bestFitnessIdx = 0;
@@ -352,31 +457,10 @@ public class SimulationEngine implements Runnable {
                 System.out.println("Snakes loaded");
 
                 for (Snake snake : readCase) {
-                    int snakeDotSize = snake.getDotSize();
+                    // Bodies and apples are cells, they stay where they are on any cell size
                     snake.setDotSize(dotSize);
                     snake.setWalls(walls);
-
-                    List<Apple> foodList = snake.getFoodList();
-                    int diff;
-                    boolean lesser;
-                    if (snakeDotSize > dotSize) {
-                        diff = snakeDotSize / dotSize;
-                        lesser = false;
-                    } else {
-                        diff = dotSize / snakeDotSize;
-                        lesser = true;
-                    }
-                    if (foodList != null) {
-                        for (Apple apple : foodList) {
-                            shiftApple(apple, lesser, diff);
-                        }
-                        snake.setFoodList(foodList);
-                    }
-
-                    Apple appleToEat = snake.getAppleToEat();
-                    if (appleToEat != null) {
-                        shiftApple(appleToEat, lesser, diff);
-                    }
+                    snake.setBrain(snake.getBrain().toPrecision(precision));
                 }
 
                 snakes = readCase;
@@ -391,28 +475,9 @@ public class SimulationEngine implements Runnable {
         }
     }
 
-    private void shiftApple(Apple apple, boolean lesser, int diff) {
-        int apple_x = apple.getApple_x();
-        int apple_y = apple.getApple_y();
-        if (apple_x != 0) {
-            if (lesser)
-                apple_x *= diff;
-            else
-                apple_x /= diff;
-        }
-
-        if (apple_y != 0) {
-            if (lesser)
-                apple_y *= diff;
-            else
-                apple_y /= diff;
-        }
-        apple.setApple_x(apple_x);
-        apple.setApple_y(apple_y);
-    }
-
     public void run() {
         int cores = Runtime.getRuntime().availableProcessors();
+        workers = cores;
         executor = Executors.newFixedThreadPool(cores);
         try {
             while (true) {
@@ -502,32 +567,23 @@ public class SimulationEngine implements Runnable {
     }
 
     public void increaseMutationRate() {
-        mutationRate *= 2;
-        if (mutationRate > 1) {
-            mutationRate = 1;
-        }
+        genetic.setMutationRate(Math.min(1, genetic.getMutationRate() * 2));
     }
 
     public void decreaseMutationRate() {
-        mutationRate /= 2;
+        genetic.setMutationRate(genetic.getMutationRate() / 2);
     }
 
     public void increaseSaveSnakeRatio() {
-        saveSnakeRatio += 0.1;
-        if (saveSnakeRatio > 1) {
-            saveSnakeRatio = 1;
-        }
+        genetic.setSaveSnakeRatio(Math.min(1, genetic.getSaveSnakeRatio() + 0.1));
     }
 
     public void decreaseSaveSnakeRatio() {
-        saveSnakeRatio -= 0.1;
-        if (saveSnakeRatio < 0.1) {
-            saveSnakeRatio = 0.1;
-        }
+        genetic.setSaveSnakeRatio(Math.max(0.1, genetic.getSaveSnakeRatio() - 0.1));
     }
 
     public void toggleBestOnly() {
-        bestOnly = !bestOnly;
+        genetic.setBestOnly(!genetic.isBestOnly());
     }
 
     public void enableAutoSave(JPanel parent) {
@@ -540,15 +596,15 @@ public class SimulationEngine implements Runnable {
     }
 
     public double getMutationRate() {
-        return mutationRate;
+        return genetic.getMutationRate();
     }
 
     public double getCrossoverRate() {
-        return crossoverRate;
+        return genetic.getCrossoverRate();
     }
 
     public double getSaveSnakeRatio() {
-        return saveSnakeRatio;
+        return genetic.getSaveSnakeRatio();
     }
 
     public double getAvgFitness() {
@@ -560,6 +616,30 @@ public class SimulationEngine implements Runnable {
     }
 
     public boolean isBestOnly() {
-        return bestOnly;
+        return genetic.isBestOnly();
+    }
+
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Switches between double and float networks. The running population is converted
+     * at the next generation, loaded populations are converted on load.
+     */
+    public void setPrecision(Precision precision) {
+        this.precision = precision;
+    }
+
+    public void togglePrecision() {
+        precision = precision == Precision.DOUBLE ? Precision.FLOAT : Precision.DOUBLE;
     }
 }
@@ -0,0 +1,200 @@
+package pl.morph.ai.snake.engine;
+
+import java.io.Serializable;
+
+/**
+ * Compressed sparse row copy of a (pruned) {@link NeuralNetwork}. Only the non zero weights are stored,
+ * so a decision costs one multiply-add per remaining weight instead of one per {@link Matrix} element.
+ * <p>
+ * For layer {@code l}, the weights of row {@code i} are {@code values[l][p]} at input {@code columns[l][p]}
+ * for {@code p} in {@code [rowStart[l][i], rowStart[l][i + 1])}. Biases are kept dense.
+ * <p>
+ * The values keep the precision of the source: a {@link Precision#FLOAT} network is stored in
+ * {@code floatValues} and {@code floatBiases} and decides in float like its dense original, a double one in
+ * {@code values} and {@code biases}. Only the arrays of one precision are set.
+ */
+public class SparseNetwork implements Policy, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private final int iNodes, hNodes, oNodes, hLayers;
+    private final int[][] rowStart;
+    private final int[][] columns;
+    private final double[][] values;
+    private final double[][] biases;
+    private final float[][] floatValues;
+    private final float[][] floatBiases;
+
+    public SparseNetwork(NeuralNetwork source) {
+        iNodes = source.iNodes;
+        hNodes = source.hNodes;
+        oNodes = source.oNodes;
+        hLayers = source.hLayers;
+
+        int layers = source.weights.length;
+        boolean single = source.getPrecision() == Precision.FLOAT;
+        rowStart = new int[layers][];
+        columns = new int[layers][];
+        values = single ? null : new double[layers][];
+        biases = single ? null : new double[layers][];
+        floatValues = single ? new float[layers][] : null;
+        floatBiases = single ? new float[layers][] : null;
+        for (int l = 0; l < layers; l++) {
+            Matrix m = source.weights[l];
+            int n = m.cols - 1;
+            int nonZeros = 0;
+            for (int i = 0; i < m.rows; i++) {
+                for (int j = 0; j < n; j++) {
+                    if (m.get(i, j) != 0) {
+                        nonZeros++;
+                    }
+                }
+            }
+            rowStart[l] = new int[m.rows + 1];
+            columns[l] = new int[nonZeros];
+            if (single) {
+                floatValues[l] = new float[nonZeros];
+                floatBiases[l] = new float[m.rows];
+            } else {
+                values[l] = new double[nonZeros];
+                biases[l] = new double[m.rows];
+            }
+            int p = 0;
+            for (int i = 0; i < m.rows; i++) {
+                rowStart[l][i] = p;
+                for (int j = 0; j < n; j++) {
+                    double value = m.get(i, j);
+                    if (value != 0) {
+                        columns[l][p] = j;
+                        if (single) {
+                            floatValues[l][p] = (float) value;
+                        } else {
+                            values[l][p] = value;
+                        }
+                        p++;
+                    }
+                }
+                if (single) {
+                    floatBiases[l][i] = (float) m.get(i, n);
+                } else {
+                    biases[l][i] = m.get(i, n);
+                }
+            }
+            rowStart[l][m.rows] = p;
+        }
+    }
+
+    public int decide(double[] inputsArr) {
+        Scratch scratch = SCRATCH.get();
+        if (floatValues != null) {
+            return decideFloat(inputsArr, scratch);
+        }
+        scratch.ensure(Math.max(hNodes, oNodes));
+        double[] curr = inputsArr;
+
+        for (int l = 0; l <= hLayers; l++) {
+            boolean last = l == hLayers;
+            int[] start = rowStart[l];
+            int[] column = columns[l];
+            double[] value = values[l];
+            double[] bias = biases[l];
+            double[] next = curr == scratch.a ? scratch.b : scratch.a;
+
+            for (int i = 0; i < bias.length; i++) {
+                double sum = 0;
+                for (int p = start[i]; p < start[i + 1]; p++) {
+                    sum += value[p] * curr[column[p]];
+                }
+                sum += bias[i];
+                next[i] = !last && sum < 0 ? 0 : sum;
+            }
+            curr = next;
+        }
+        return DenseKernels.get().argmax(curr, 0, oNodes);
+    }
+
+    // Float twin of decide(), the inputs are narrowed first as the dense float path does
+    private int decideFloat(double[] inputsArr, Scratch scratch) {
+        scratch.ensureFloats(Math.max(iNodes, Math.max(hNodes, oNodes)));
+        float[] curr = scratch.floatInputs;
+        for (int i = 0; i < iNodes; i++) {
+            curr[i] = (float) inputsArr[i];
+        }
+
+        for (int l = 0; l <= hLayers; l++) {
+            boolean last = l == hLayers;
+            int[] start = rowStart[l];
+            int[] column = columns[l];
+            float[] value = floatValues[l];
+            float[] bias = floatBiases[l];
+            float[] next = curr == scratch.floatA ? scratch.floatB : scratch.floatA;
+
+            for (int i = 0; i < bias.length; i++) {
+                float sum = 0;
+                for (int p = start[i]; p < start[i + 1]; p++) {
+                    sum += value[p] * curr[column[p]];
+                }
+                sum += bias[i];
+                next[i] = !last && sum < 0 ? 0 : sum;
+            }
+            curr = next;
+        }
+        return DenseKernels.get().argmax(curr, 0, oNodes);
+    }
+
+    /**
+     * Number of stored weights, biases not included.
+     */
+    public int nonZeros() {
+        int count = 0;
+        for (int[] layer : columns) {
+            count += layer.length;
+        }
+        return count;
+    }
+
+    /**
+     * Bytes taken by the values, column indexes, row starts and biases.
+     */
+    public int sizeInBytes() {
+        int valueBytes = floatValues != null ? 4 : 8;
+        int bytes = 0;
+        for (int l = 0; l < columns.length; l++) {
+            bytes += (valueBytes + 4) * columns[l].length + 4 * rowStart[l].length + valueBytes * (rowStart[l].length - 1);
+        }
+        return bytes;
+    }
+
+    public Precision getPrecision() {
+        return floatValues != null ? Precision.FLOAT : Precision.DOUBLE;
+    }
+
+    private static final class Scratch {
+        private double[] a = new double[0];
+        private double[] b = new double[0];
+        private float[] floatInputs = new float[0];
+        private float[] floatA = new float[0];
+        private float[] floatB = new float[0];
+
+        void ensure(int size) {
+            if (a.length < size) {
+                a = new double[size];
+                b = new double[size];
+            }
+        }
+
+        void ensureFloats(int size) {
+            if (floatA.length < size) {
+                floatInputs = new float[size];
+                floatA = new float[size];
+                floatB = new float[size];
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package pl.morph.ai.snake.engine;
+
+/**
+ * Decision pass compiled for one exact topology by {@link NetworkSpecializer}.
+ * <p>
+ * {@code weights[l]} holds the row-major data of layer {@code l} (bias in the last column) starting at
+ * {@code offsets[l]}, and {@code scratch} holds at least {@link NeuralNetwork#scratchSize()} values.
+ * Public only because the generated classes live in their own class loader.
+ */
+public interface SpecializedNetwork {
+
+    int decide(double[][] weights, int[] offsets, double[] inputs, double[] scratch);
+
+    int decide(float[][] weights, int[] offsets, double[] inputs, float[] scratch);
+}
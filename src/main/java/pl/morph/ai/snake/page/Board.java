@@ -63,30 +63,23 @@ public class Board extends JPanel implements ActionListener {
         }
         this.snake = new Snake(B_WIDTH, B_HEIGHT, 60, true, null, DOT_SIZE, humanWalls);
         this.snake.setShowIt(true);
-        placeSnakeRandomly(this.snake);
+        this.snake.setRandomStartingPosition();
         snake.spawnApple();
     }
 
-    private void placeSnakeRandomly(Snake snake) {
-        List<Snake.XY> boardList = snake.populate(B_WIDTH / DOT_SIZE, B_HEIGHT / DOT_SIZE);
-        int index = (int) (Math.random() * boardList.size());
-        Snake.XY xy = boardList.get(index);
-        snake.setStartingPosition(xy);
-    }
-
     @Override
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
 
         if (humanPlaying) {
             if (snake.inGame) {
-                snake.doDrawing(g);
+                drawSnake(g, snake, DOT_SIZE);
             } else {
                 gameOver(g);
             }
             if (humanWalls != null && !humanWalls.isEmpty()) {
                 for (Wall wall : humanWalls) {
-                    wall.doDrawing(g);
+                    drawWall(g, wall, DOT_SIZE);
                 }
             }
         } else {
@@ -95,7 +88,7 @@ public class Board extends JPanel implements ActionListener {
             if (snakes != null) {
                 for (Snake snake : snakes) {
                     if (snake.inGame || snake.isBestSnake()) {
-                        snake.doDrawing(g);
+                        drawSnake(g, snake, engine.getDotSize());
                     }
                 }
             }
@@ -103,7 +96,7 @@ public class Board extends JPanel implements ActionListener {
             List<Wall> walls = engine.getWalls();
             if (walls != null && !walls.isEmpty()) {
                 for (Wall wall : walls) {
-                    wall.doDrawing(g);
+                    drawWall(g, wall, engine.getDotSize());
                 }
             }
         }
@@ -111,6 +104,43 @@ public class Board extends JPanel implements ActionListener {
         Toolkit.getDefaultToolkit().sync();
     }
 
+    // Snakes, apples and walls live on cells, dotSize pixels each on screen
+    private void drawSnake(Graphics g, Snake snake, int dotSize) {
+        Apple appleToEat = snake.getAppleToEat();
+        if (snake.inGame) {
+            if (snake.isShowIt() && appleToEat != null) {
+                g.setColor(Color.red);
+                g.fillRect(appleToEat.getApple_x() * dotSize, appleToEat.getApple_y() * dotSize, dotSize - 1, dotSize - 1);
+                g.setColor(Color.black);
+                g.drawRect(appleToEat.getApple_x() * dotSize, appleToEat.getApple_y() * dotSize, dotSize, dotSize);
+            }
+
+            for (int z = snake.getLength() - 1; z >= 0; z--) {
+                if (snake.isShowIt()) {
+                    g.setColor(snake.getBrain().tailColor());
+                    g.fillRect(snake.getColumn(z) * dotSize, snake.getRow(z) * dotSize, dotSize - 1, dotSize - 1);
+                    //head yellow, tail white
+                    g.setColor(z == 0 ? Color.yellow : Color.white);
+                    g.drawRect(snake.getColumn(z) * dotSize, snake.getRow(z) * dotSize, dotSize, dotSize);
+                }
+            }
+        } else if (snake.isBestSnake() && snake.isShowIt()) {
+            for (int z = 0; z < snake.getLength(); z++) {
+                g.setColor(z == 0 ? Color.CYAN : Color.gray);
+                g.fillRect(snake.getColumn(z) * dotSize, snake.getRow(z) * dotSize, dotSize - 1, dotSize - 1);
+                g.setColor(Color.black);
+                g.drawRect(snake.getColumn(z) * dotSize, snake.getRow(z) * dotSize, dotSize, dotSize);
+            }
+        }
+    }
+
+    private void drawWall(Graphics g, Wall wall, int dotSize) {
+        g.setColor(Color.gray);
+        g.fillRect(wall.getX() * dotSize, wall.getY() * dotSize, wall.getWidth() * dotSize - 1, wall.getHeight() * dotSize - 1);
+        g.setColor(Color.black);
+        g.drawRect(wall.getX() * dotSize, wall.getY() * dotSize, wall.getWidth() * dotSize, wall.getHeight() * dotSize);
+    }
+
     private void gameOver(Graphics g) {
         String msg = "Game Over";
         String restartGameMsg = "Press space bar to restart game";
@@ -226,6 +256,10 @@ public class Board extends JPanel implements ActionListener {
                 if (key == KeyEvent.VK_L) {
                     engine.readFromFile(Board.this);
                 }
+
+                if (key == KeyEvent.VK_F) {
+                    engine.togglePrecision();
+                }
             }
         }
     }
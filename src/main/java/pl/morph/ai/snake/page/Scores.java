@@ -101,6 +101,8 @@ public class Scores extends JPanel implements Serializable {
         if (engine != null) {
             msg = "Mode: " + (engine.isVisualMode() ? "VISUAL" : "HEADLESS");
             g.drawString(msg, (SCORES_WIDTH - metr.stringWidth(msg)) / 2, 220);
+            msg = "Precision: " + engine.getPrecision();
+            g.drawString(msg, (SCORES_WIDTH - metr.stringWidth(msg)) / 2, 240);
         }
     }
 
@@ -133,6 +135,8 @@ public class Scores extends JPanel implements Serializable {
         g.drawString(msg, 20, 480);
         msg = "Press 'v' to toggle headless/visual mode ";
         g.drawString(msg, 20, 500);
+        msg = "Press 'f' to toggle float/double networks ";
+        g.drawString(msg, 20, 520);
     }
 
     @Override
@@ -179,4 +183,9 @@ public class Scores extends JPanel implements Serializable {
     public int getGeneration() {
         return generation;
     }
+
+    public void setGeneration(int generation) {
+        this.generation = generation;
+        repaint();
+    }
 }
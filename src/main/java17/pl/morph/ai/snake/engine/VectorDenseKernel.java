@@ -0,0 +1,213 @@
+package pl.morph.ai.snake.engine;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API kernel, only compiled into the Java 17 part of the multi-release jar.
+ * Every row is one dot product, accumulated lane-wise with FMA and reduced once, the tail is scalar. That order
+ * and the fused rounding differ from {@link ScalarDenseKernel}, so {@code dense} can give a different decision
+ * than the scalar kernel when the two largest outputs nearly tie. {@code denseBatch} vectorizes across inputs
+ * instead and sums every output in the scalar order.
+ */
+class VectorDenseKernel implements DenseKernel {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    public void dense(double[] w, int wOffset, int rows, int cols,
+                      double[] in, int inOffset, double[] out, int outOffset, boolean relu) {
+        int inputs = cols - 1;
+        int bound = DOUBLES.loopBound(inputs);
+        for (int i = 0; i < rows; i++) {
+            int rowOffset = wOffset + i * cols;
+            DoubleVector acc = DoubleVector.zero(DOUBLES);
+            int k = 0;
+            for (; k < bound; k += DOUBLES.length()) {
+                DoubleVector weights = DoubleVector.fromArray(DOUBLES, w, rowOffset + k);
+                acc = weights.fma(DoubleVector.fromArray(DOUBLES, in, inOffset + k), acc);
+            }
+            double sum = acc.reduceLanes(VectorOperators.ADD);
+            for (; k < inputs; k++) {
+                sum += w[rowOffset + k] * in[inOffset + k];
+            }
+            sum += w[rowOffset + inputs];
+            out[outOffset + i] = relu ? Math.max(0, sum) : sum;
+        }
+    }
+
+    public void dense(float[] w, int wOffset, int rows, int cols,
+                      float[] in, int inOffset, float[] out, int outOffset, boolean relu) {
+        int inputs = cols - 1;
+        int bound = FLOATS.loopBound(inputs);
+        for (int i = 0; i < rows; i++) {
+            int rowOffset = wOffset + i * cols;
+            FloatVector acc = FloatVector.zero(FLOATS);
+            int k = 0;
+            for (; k < bound; k += FLOATS.length()) {
+                FloatVector weights = FloatVector.fromArray(FLOATS, w, rowOffset + k);
+                acc = weights.fma(FloatVector.fromArray(FLOATS, in, inOffset + k), acc);
+            }
+            float sum = acc.reduceLanes(VectorOperators.ADD);
+            for (; k < inputs; k++) {
+                sum += w[rowOffset + k] * in[inOffset + k];
+            }
+            sum += w[rowOffset + inputs];
+            out[outOffset + i] = relu ? Math.max(0f, sum) : sum;
+        }
+    }
+
+    // Lanes run over the inputs of the batch, so every lane sums its own row in the scalar order. Multiply and add
+    // stay separate instead of fma to round like the scalar kernel.
+    public void denseBatch(double[] w, int wOffset, int rows, int cols, double[] in, int inOffset,
+                           double[] out, int outOffset, int stride, int count, boolean relu) {
+        int inputs = cols - 1;
+        int bound = DOUBLES.loopBound(count);
+        for (int i = 0; i < rows; i++) {
+            int rowOffset = wOffset + i * cols;
+            int o = outOffset + i * stride;
+            double bias = w[rowOffset + inputs];
+            int b = 0;
+            // Two independent chains hide the latency of the adds
+            for (; b + 2 * DOUBLES.length() <= bound; b += 2 * DOUBLES.length()) {
+                DoubleVector acc0 = DoubleVector.zero(DOUBLES);
+                DoubleVector acc1 = acc0;
+                for (int k = 0; k < inputs; k++) {
+                    int x = inOffset + k * stride + b;
+                    double weight = w[rowOffset + k];
+                    acc0 = acc0.add(DoubleVector.fromArray(DOUBLES, in, x).mul(weight));
+                    acc1 = acc1.add(DoubleVector.fromArray(DOUBLES, in, x + DOUBLES.length()).mul(weight));
+                }
+                acc0 = acc0.add(bias);
+                acc1 = acc1.add(bias);
+                if (relu) {
+                    acc0 = acc0.max(0);
+                    acc1 = acc1.max(0);
+                }
+                acc0.intoArray(out, o + b);
+                acc1.intoArray(out, o + b + DOUBLES.length());
+            }
+            for (; b < bound; b += DOUBLES.length()) {
+                DoubleVector acc = DoubleVector.zero(DOUBLES);
+                for (int k = 0; k < inputs; k++) {
+                    DoubleVector x = DoubleVector.fromArray(DOUBLES, in, inOffset + k * stride + b);
+                    acc = acc.add(x.mul(w[rowOffset + k]));
+                }
+                acc = acc.add(bias);
+                if (relu) {
+                    acc = acc.max(0);
+                }
+                acc.intoArray(out, o + b);
+            }
+            for (; b < count; b++) {
+                double sum = 0;
+                for (int k = 0; k < inputs; k++) {
+                    sum += w[rowOffset + k] * in[inOffset + k * stride + b];
+                }
+                sum += bias;
+                out[o + b] = relu ? Math.max(0, sum) : sum;
+            }
+        }
+    }
+
+    public void denseBatch(float[] w, int wOffset, int rows, int cols, float[] in, int inOffset,
+                           float[] out, int outOffset, int stride, int count, boolean relu) {
+        int inputs = cols - 1;
+        int bound = FLOATS.loopBound(count);
+        for (int i = 0; i < rows; i++) {
+            int rowOffset = wOffset + i * cols;
+            int o = outOffset + i * stride;
+            float bias = w[rowOffset + inputs];
+            int b = 0;
+            // Two independent chains hide the latency of the adds
+            for (; b + 2 * FLOATS.length() <= bound; b += 2 * FLOATS.length()) {
+                FloatVector acc0 = FloatVector.zero(FLOATS);
+                FloatVector acc1 = acc0;
+                for (int k = 0; k < inputs; k++) {
+                    int x = inOffset + k * stride + b;
+                    float weight = w[rowOffset + k];
+                    acc0 = acc0.add(FloatVector.fromArray(FLOATS, in, x).mul(weight));
+                    acc1 = acc1.add(FloatVector.fromArray(FLOATS, in, x + FLOATS.length()).mul(weight));
+                }
+                acc0 = acc0.add(bias);
+                acc1 = acc1.add(bias);
+                if (relu) {
+                    acc0 = acc0.max(0f);
+                    acc1 = acc1.max(0f);
+                }
+                acc0.intoArray(out, o + b);
+                acc1.intoArray(out, o + b + FLOATS.length());
+            }
+            for (; b < bound; b += FLOATS.length()) {
+                FloatVector acc = FloatVector.zero(FLOATS);
+                for (int k = 0; k < inputs; k++) {
+                    FloatVector x = FloatVector.fromArray(FLOATS, in, inOffset + k * stride + b);
+                    acc = acc.add(x.mul(w[rowOffset + k]));
+                }
+                acc = acc.add(bias);
+                if (relu) {
+                    acc = acc.max(0f);
+                }
+                acc.intoArray(out, o + b);
+            }
+            for (; b < count; b++) {
+                float sum = 0;
+                for (int k = 0; k < inputs; k++) {
+                    sum += w[rowOffset + k] * in[inOffset + k * stride + b];
+                }
+                sum += bias;
+                out[o + b] = relu ? Math.max(0f, sum) : sum;
+            }
+        }
+    }
+
+    public int argmax(double[] values, int offset, int length) {
+        int bound = DOUBLES.loopBound(length);
+        double max = Double.NEGATIVE_INFINITY;
+        int k = 0;
+        if (bound > 0) {
+            DoubleVector best = DoubleVector.fromArray(DOUBLES, values, offset);
+            for (k = DOUBLES.length(); k < bound; k += DOUBLES.length()) {
+                best = best.max(DoubleVector.fromArray(DOUBLES, values, offset + k));
+            }
+            max = best.reduceLanes(VectorOperators.MAX);
+        }
+        for (; k < length; k++) {
+            max = Math.max(max, values[offset + k]);
+        }
+        // First index holding the maximum, same tie-break as the scalar kernel
+        for (int i = 0; i < length; i++) {
+            if (values[offset + i] == max) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    public int argmax(float[] values, int offset, int length) {
+        int bound = FLOATS.loopBound(length);
+        float max = Float.NEGATIVE_INFINITY;
+        int k = 0;
+        if (bound > 0) {
+            FloatVector best = FloatVector.fromArray(FLOATS, values, offset);
+            for (k = FLOATS.length(); k < bound; k += FLOATS.length()) {
+                best = best.max(FloatVector.fromArray(FLOATS, values, offset + k));
+            }
+            max = best.reduceLanes(VectorOperators.MAX);
+        }
+        for (; k < length; k++) {
+            max = Math.max(max, values[offset + k]);
+        }
+        for (int i = 0; i < length; i++) {
+            if (values[offset + i] == max) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    public String name() {
+        return "vector (" + DOUBLES.length() + " x double, " + FLOATS.length() + " x float)";
+    }
+}
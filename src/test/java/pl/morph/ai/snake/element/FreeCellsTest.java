@@ -0,0 +1,63 @@
+package pl.morph.ai.snake.element;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FreeCellsTest {
+
+    @Test
+    void setFollowsOccupyAndReleaseAtAnOffset() {
+        int offset = 7;
+        int size = 30;
+        int[] cells = new int[offset + size];
+        int[] slots = new int[offset + size];
+        int count = FreeCells.fill(cells, slots, offset, size);
+        Set<Integer> free = new HashSet<Integer>();
+        for (int cell = 0; cell < size; cell++) {
+            free.add(cell);
+        }
+
+        Random random = new Random(2);
+        for (int n = 0; n < 2000; n++) {
+            int cell = random.nextInt(size);
+            if (random.nextBoolean()) {
+                count = FreeCells.occupy(cells, slots, offset, count, cell);
+                free.remove(cell);
+            } else {
+                count = FreeCells.release(cells, slots, offset, count, cell);
+                free.add(cell);
+            }
+            assertEquals(free.size(), count);
+            for (int c = 0; c < size; c++) {
+                assertEquals(free.contains(c), FreeCells.isFree(slots, offset, count, c));
+            }
+        }
+        Set<Integer> listed = new HashSet<Integer>();
+        for (int i = 0; i < count; i++) {
+            listed.add(cells[offset + i]);
+        }
+        assertEquals(free, listed);
+    }
+
+    @Test
+    void sampleDrawsOnlyFreeCells() {
+        int[] cells = new int[10];
+        int[] slots = new int[10];
+        int count = FreeCells.fill(cells, slots, 0, 10);
+        count = FreeCells.occupy(cells, slots, 0, count, 3);
+        count = FreeCells.occupy(cells, slots, 0, count, 9);
+
+        Set<Integer> drawn = new HashSet<Integer>();
+        for (double r = 0; r < 1; r += 0.01) {
+            drawn.add(FreeCells.sample(cells, 0, count, r));
+        }
+        assertEquals(8, drawn.size());
+        assertFalse(drawn.contains(3));
+        assertFalse(drawn.contains(9));
+    }
+}
@@ -2,9 +2,22 @@ package pl.morph.ai.snake.element;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-
+import pl.morph.ai.snake.engine.NeuralNetwork;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -14,6 +27,8 @@ class SnakeTest {
     private static final int BOARD_H = 200;
     private static final int DOT_SIZE = 10;
     private static final int DELAY = 50;
+    private static final int COLUMNS = BOARD_W / DOT_SIZE;
+    private static final int ROWS = BOARD_H / DOT_SIZE;
 
     private Snake snake;
 
@@ -37,71 +52,412 @@ class SnakeTest {
         snake.direction = Direction.RIGHT;
         int xBefore = snake.getX()[0];
         snake.move();
-        assertEquals(xBefore + DOT_SIZE, snake.getX()[0]);
+        assertEquals(xBefore + 1, snake.getX()[0]);
     }
 
     @Test
     void moveShiftsBodySegments() {
         // Grow the snake by adding length manually
         snake.setLength(3);
-        snake.getX()[0] = 50;
-        snake.getY()[0] = 50;
-        snake.getX()[1] = 40;
-        snake.getY()[1] = 50;
-        snake.getX()[2] = 30;
-        snake.getY()[2] = 50;
+        snake.getX()[0] = 5;
+        snake.getY()[0] = 5;
+        snake.getX()[1] = 4;
+        snake.getY()[1] = 5;
+        snake.getX()[2] = 3;
+        snake.getY()[2] = 5;
         snake.direction = Direction.RIGHT;
 
         snake.move();
 
         // Old head position should now be body[1]
-        assertEquals(50, snake.getX()[1]);
-        assertEquals(50, snake.getY()[1]);
+        assertEquals(5, snake.getX()[1]);
+        assertEquals(5, snake.getY()[1]);
         // Old body[1] should now be body[2]
-        assertEquals(40, snake.getX()[2]);
-        assertEquals(50, snake.getY()[2]);
+        assertEquals(4, snake.getX()[2]);
+        assertEquals(5, snake.getY()[2]);
     }
 
     @Test
     void bodyCollideDetectsSelfCollision() {
         snake.setLength(4);
-        snake.getX()[0] = 50;
-        snake.getY()[0] = 50;
-        snake.getX()[1] = 40;
-        snake.getY()[1] = 50;
-        snake.getX()[2] = 50;
-        snake.getY()[2] = 50; // same as head
-        snake.getX()[3] = 60;
-        snake.getY()[3] = 50;
-
-        assertTrue(snake.bodyCollide(50, 50));
+        snake.getX()[0] = 5;
+        snake.getY()[0] = 5;
+        snake.getX()[1] = 4;
+        snake.getY()[1] = 5;
+        snake.getX()[2] = 5;
+        snake.getY()[2] = 5; // same as head
+        snake.getX()[3] = 6;
+        snake.getY()[3] = 5;
+
+        assertTrue(snake.bodyCollide(5, 5));
     }
 
     @Test
     void bodyCollideReturnsFalseForNoCollision() {
         snake.setLength(2);
-        snake.getX()[0] = 50;
-        snake.getY()[0] = 50;
-        snake.getX()[1] = 40;
-        snake.getY()[1] = 50;
+        snake.getX()[0] = 5;
+        snake.getY()[0] = 5;
+        snake.getX()[1] = 4;
+        snake.getY()[1] = 5;
 
-        assertFalse(snake.bodyCollide(60, 60));
+        assertFalse(snake.bodyCollide(6, 6));
     }
 
     @Test
     void wallCollideDetectsBoundaryCollision() {
-        assertTrue(snake.wallCollide(BOARD_W, 50));  // right edge
-        assertTrue(snake.wallCollide(-1, 50));        // left of board
-        assertTrue(snake.wallCollide(50, BOARD_H));   // bottom edge
-        assertTrue(snake.wallCollide(50, -1));         // above board
+        assertTrue(snake.wallCollide(COLUMNS, 5));  // right edge
+        assertTrue(snake.wallCollide(-1, 5));       // left of board
+        assertTrue(snake.wallCollide(5, ROWS));     // bottom edge
+        assertTrue(snake.wallCollide(5, -1));       // above board
     }
 
     @Test
     void wallCollideReturnsFalseInsideBoard() {
-        assertFalse(snake.wallCollide(50, 50));
+        assertFalse(snake.wallCollide(5, 5));
         assertFalse(snake.wallCollide(0, 0));
     }
 
+    @Test
+    void wallCollideFindsWallCells() {
+        List<Wall> walls = new ArrayList<Wall>();
+        walls.add(new Wall(7, 3));
+        walls.add(new Wall(COLUMNS + 5, 3)); // off the board
+        Snake s = new Snake(BOARD_W, BOARD_H, DELAY, false, null, DOT_SIZE, walls);
+
+        assertTrue(s.wallCollide(7, 3));
+        assertFalse(s.wallCollide(8, 3));
+        assertFalse(s.wallCollide(7, 4));
+        assertFalse(s.wallCollide(5, 3));
+    }
+
+    @Test
+    void bodyCollideFollowsTheBodyWhileMovingAndGrowing() {
+        LinkedList<int[]> body = new LinkedList<int[]>();
+        snake.setLength(5);
+        for (int i = 0; i < 5; i++) {
+            snake.getX()[i] = 10 - i;
+            snake.getY()[i] = 10;
+            body.add(new int[]{10 - i, 10});
+        }
+        snake.getAppleToEat().setApple_x(0).setApple_y(0);
+        Direction[] path = {Direction.DOWN, Direction.DOWN, Direction.LEFT, Direction.LEFT, Direction.LEFT,
+                Direction.UP, Direction.UP, Direction.UP, Direction.RIGHT, Direction.RIGHT};
+        for (int step = 0; step < path.length; step++) {
+            int[] head = body.getFirst();
+            boolean grow = step == 4;
+            if (grow) {
+                snake.getAppleToEat().setApple_x(head[0]).setApple_y(head[1]);
+            }
+            snake.direction = path[step];
+            snake.move();
+            if (grow) {
+                snake.getAppleToEat().setApple_x(0).setApple_y(0);
+            } else {
+                body.removeLast();
+            }
+            int dx = path[step] == Direction.LEFT ? -1 : path[step] == Direction.RIGHT ? 1 : 0;
+            int dy = path[step] == Direction.UP ? -1 : path[step] == Direction.DOWN ? 1 : 0;
+            body.addFirst(new int[]{head[0] + dx, head[1] + dy});
+
+            assertTrue(snake.inGame);
+            assertEquals(body.size(), snake.getLength());
+            for (int cx = 0; cx < COLUMNS; cx++) {
+                for (int cy = 0; cy < ROWS; cy++) {
+                    boolean expected = false;
+                    for (int i = 1; i < body.size(); i++) {
+                        expected |= body.get(i)[0] == cx && body.get(i)[1] == cy;
+                    }
+                    assertEquals(expected, snake.bodyCollide(cx, cy), "step " + step + " at " + cx + "," + cy);
+                }
+            }
+        }
+    }
+
+    @Test
+    void bodyStaysHeadFirstAfterWrappingAroundTheRing() throws Exception {
+        // 6x6 board, so the body arrays hold 36 segments and 80 moves wrap around them twice
+        Snake s = new Snake(60, 60, DELAY, false, null, DOT_SIZE, Collections.<Wall>emptyList());
+        s.setStartingPosition(s.new XY(1, 1));
+        s.spawnApple();
+        LinkedList<int[]> body = new LinkedList<int[]>();
+        body.add(new int[]{1, 1});
+        Direction[] sides = {Direction.RIGHT, Direction.DOWN, Direction.LEFT, Direction.UP};
+        for (int step = 0; step < 80; step++) {
+            Direction direction = sides[step / 3 % 4];
+            int[] head = body.getFirst();
+            boolean grow = step < 3;
+            s.setAppleToEat(grow ? new Apple(head[0], head[1]) : new Apple(0, 0));
+            s.direction = direction;
+            s.move();
+            if (!grow) {
+                body.removeLast();
+            }
+            int dx = direction == Direction.LEFT ? -1 : direction == Direction.RIGHT ? 1 : 0;
+            int dy = direction == Direction.UP ? -1 : direction == Direction.DOWN ? 1 : 0;
+            body.addFirst(new int[]{head[0] + dx, head[1] + dy});
+            assertTrue(s.inGame, "step " + step);
+        }
+
+        Snake loaded = saveAndLoad(s);
+        for (Snake copy : new Snake[]{s, loaded}) {
+            assertEquals(4, copy.getLength());
+            for (int i = 0; i < body.size(); i++) {
+                assertEquals(body.get(i)[0], copy.getX()[i]);
+                assertEquals(body.get(i)[1], copy.getY()[i]);
+            }
+        }
+    }
+
+    @Test
+    void savingLeavesTheMovingSnakeAlone() throws Exception {
+        snake.setLength(3);
+        snake.getX()[0] = 5;
+        snake.getY()[0] = 5;
+        snake.getX()[1] = 4;
+        snake.getY()[1] = 5;
+        snake.getX()[2] = 3;
+        snake.getY()[2] = 5;
+        snake.direction = Direction.RIGHT;
+        snake.setAppleToEat(new Apple(0, 0));
+        int[] x = snake.getX();
+        int[] y = snake.getY();
+        int[] xBefore = x.clone();
+        int[] yBefore = y.clone();
+        snake.move();
+
+        Snake loaded = saveAndLoad(snake);
+
+        // Arrays handed out before the move are not rewritten by the save
+        assertArrayEquals(xBefore, x);
+        assertArrayEquals(yBefore, y);
+        snake.direction = Direction.DOWN;
+        snake.move();
+        loaded.direction = Direction.DOWN;
+        loaded.move();
+        for (Snake copy : new Snake[]{snake, loaded}) {
+            assertTrue(copy.inGame);
+            assertEquals(6, copy.getX()[0]);
+            assertEquals(6, copy.getY()[0]);
+            assertEquals(6, copy.getX()[1]);
+            assertEquals(5, copy.getY()[1]);
+            assertEquals(5, copy.getX()[2]);
+            assertEquals(5, copy.getY()[2]);
+        }
+    }
+
+    @Test
+    void savesEveryField() throws Exception {
+        snake.move();
+        snake.calculateFitness();
+
+        Snake loaded = saveAndLoad(snake);
+
+        for (ObjectStreamField saved : ObjectStreamClass.lookup(Snake.class).getFields()) {
+            Field field = Snake.class.getDeclaredField(saved.getName());
+            field.setAccessible(true);
+            Object value = field.get(snake);
+            if (saved.isPrimitive() || value instanceof Enum) {
+                assertEquals(value, field.get(loaded), saved.getName());
+            } else {
+                assertEquals(value == null, field.get(loaded) == null, saved.getName());
+            }
+        }
+    }
+
+    @Test
+    void pixelPositionsOfOldSavesLoadAsCells() throws Exception {
+        List<Wall> walls = new ArrayList<Wall>();
+        Wall wall = new Wall(70, 30);
+        wall.setWidth(DOT_SIZE);
+        wall.setHeight(DOT_SIZE);
+        walls.add(wall);
+        Snake s = new Snake(BOARD_W, BOARD_H, DELAY, false, null, DOT_SIZE, walls);
+        s.setLength(2);
+        s.getX()[0] = 50;
+        s.getY()[0] = 40;
+        s.getX()[1] = 60;
+        s.getY()[1] = 40;
+        Apple apple = new Apple(120, 90);
+        s.setAppleToEat(apple);
+        s.getFoodList().add(apple);
+        // Marked the way saves from before cells come in
+        for (Object saved : new Object[]{s, wall, apple}) {
+            Field cells = saved.getClass().getDeclaredField("cells");
+            cells.setAccessible(true);
+            cells.setBoolean(saved, false);
+        }
+
+        Snake loaded = saveAndLoad(s);
+
+        assertEquals(5, loaded.getX()[0]);
+        assertEquals(4, loaded.getY()[0]);
+        assertEquals(6, loaded.getX()[1]);
+        assertEquals(4, loaded.getY()[1]);
+        // Converted once, though saved twice
+        assertSame(loaded.getAppleToEat(), loaded.getFoodList().get(0));
+        assertEquals(12, loaded.getAppleToEat().getApple_x());
+        assertEquals(9, loaded.getAppleToEat().getApple_y());
+        assertTrue(loaded.wallCollide(7, 3));
+        assertFalse(loaded.wallCollide(6, 3));
+        loaded.direction = Direction.LEFT;
+        loaded.move();
+        assertTrue(loaded.inGame);
+        assertEquals(4, loaded.getColumn(0));
+        assertEquals(5, loaded.getColumn(1));
+    }
+
+    private static Snake saveAndLoad(Snake s) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(s);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (Snake) in.readObject();
+        }
+    }
+
+    @Test
+    void rayTablesSeeWhatAStepByStepWalkSees() {
+        Random random = new Random(5);
+        int[][] rays = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}, {-1, -1}, {1, -1}, {-1, 1}, {1, 1}};
+        for (int round = 0; round < 200; round++) {
+            List<Wall> walls = new ArrayList<Wall>();
+            for (int w = 0; w < 15; w++) {
+                walls.add(new Wall(random.nextInt(COLUMNS), random.nextInt(ROWS)));
+            }
+            Snake s = new Snake(BOARD_W, BOARD_H, DELAY, false, null, DOT_SIZE, walls);
+            int length = 1 + random.nextInt(30);
+            s.setLength(length);
+            for (int i = 0; i < length; i++) {
+                s.getX()[i] = random.nextInt(COLUMNS);
+                s.getY()[i] = random.nextInt(ROWS);
+            }
+            s.setAppleToEat(new Apple(random.nextInt(COLUMNS), random.nextInt(ROWS)));
+
+            for (int[] ray : rays) {
+                assertArrayEquals(walk(s, ray[0], ray[1]), s.lookInDirection(ray), "round " + round);
+            }
+        }
+    }
+
+    // What a ray of (X, Y) cells from the head sees, found by stepping it cell by cell
+    private static double[] walk(Snake s, int X, int Y) {
+        double[] look = new double[3];
+        int column = s.getX()[0] + X;
+        int row = s.getY()[0] + Y;
+        int distance = 1;
+        while (!s.wallCollide(column, row)) {
+            if (look[0] == 0 && s.foodCollide(column, row)) {
+                look[0] = 1.0 / distance;
+            }
+            if (look[1] == 0 && s.bodyCollide(column, row)) {
+                look[1] = 1.0 / distance;
+            }
+            column += X;
+            row += Y;
+            distance++;
+        }
+        look[2] = 1.0 / distance;
+        return look;
+    }
+
+    @Test
+    void lookReusesItsVisionAndAllocatesNothing() {
+        snake.setLength(3);
+        snake.getX()[1] = snake.getX()[0] - 1;
+        snake.getY()[1] = snake.getY()[0];
+        snake.getX()[2] = snake.getX()[0] - 2;
+        snake.getY()[2] = snake.getY()[0];
+        snake.setAppleToEat(new Apple(COLUMNS - 1, ROWS - 1));
+        double[] vision = snake.getVision();
+        Direction[] sides = {Direction.RIGHT, Direction.DOWN, Direction.LEFT, Direction.UP};
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+
+        long allocated = 0;
+        for (int tick = 0; tick < 250; tick++) {
+            if (tick == 100) {
+                allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+            snake.look();
+            snake.direction = sides[tick / 4 % 4];
+            snake.move();
+        }
+        allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+
+        assertTrue(snake.inGame);
+        assertSame(vision, snake.getVision());
+        // Measuring itself may cost a few bytes, the 17 arrays of every tick would be kilobytes
+        assertTrue(allocated < 1024, allocated + " bytes");
+        double[] expected = new double[26];
+        expected[0] = snake.direction.value();
+        Direction[] order = {Direction.LEFT, Direction.UP, Direction.RIGHT, Direction.DOWN,
+                Direction.TOP_LEFT, Direction.TOP_RIGHT, Direction.DOWN_RIGHT, Direction.DOWN_LEFT};
+        snake.look();
+        for (int r = 0; r < order.length; r++) {
+            double[] ray = snake.lookInDirection(snake.direction.look(1, order[r]));
+            System.arraycopy(ray, 0, expected, 2 + 3 * r, 3);
+        }
+        expected[1] = vision[1];
+        assertArrayEquals(expected, vision);
+    }
+
+    @Test
+    void applesSpawnOnEveryFreeCellAndNeverOnTheSnake() {
+        List<Wall> walls = new ArrayList<Wall>();
+        walls.add(new Wall(0, 0));
+        Snake s = new Snake(60, 60, DELAY, false, null, DOT_SIZE, walls);
+        s.setStartingPosition(s.new XY(1, 1));
+        s.spawnApple();
+        for (int step = 0; step < 3; step++) {
+            s.setAppleToEat(new Apple(1 + step, 1));
+            s.direction = Direction.RIGHT;
+            s.move();
+        }
+        // Grown to 4 eating along the top row, then turning down and left
+        s.setAppleToEat(new Apple(5, 5));
+        s.direction = Direction.DOWN;
+        s.move();
+        s.direction = Direction.LEFT;
+        s.move();
+        assertTrue(s.inGame);
+
+        Set<String> taken = new HashSet<String>();
+        taken.add("0,0");
+        taken.add("3,2");
+        taken.add("4,2");
+        taken.add("4,1");
+        taken.add("3,1");
+        Set<String> seen = new HashSet<String>();
+        for (int n = 0; n < 3000; n++) {
+            s.spawnApple();
+            Apple apple = s.getAppleToEat();
+            String cell = apple.getApple_x() + "," + apple.getApple_y();
+            assertFalse(taken.contains(cell), cell);
+            seen.add(cell);
+        }
+        assertEquals(36 - taken.size(), seen.size());
+    }
+
+    @Test
+    void randomStartingPositionsCoverEveryCellButWalls() {
+        List<Wall> walls = new ArrayList<Wall>();
+        walls.add(new Wall(0, 0));
+        walls.add(new Wall(2, 3));
+        walls.add(new Wall(5, 5));
+        Set<String> seen = new HashSet<String>();
+        for (int n = 0; n < 2000; n++) {
+            Snake s = new Snake(60, 60, DELAY, false, null, DOT_SIZE, walls);
+            s.setRandomStartingPosition();
+            Snake.XY start = s.getStartingPosition();
+            assertFalse(s.wallCollide(start.getX(), start.getY()), start.getX() + "," + start.getY());
+            assertEquals(start.getX(), s.getX()[0]);
+            assertEquals(start.getY(), s.getY()[0]);
+            seen.add(start.getX() + "," + start.getY());
+        }
+        assertEquals(36 - walls.size(), seen.size());
+    }
+
     @Test
     void foodCollideDetectsAppleCollision() {
         Apple apple = snake.getAppleToEat();
@@ -111,7 +467,7 @@ class SnakeTest {
     @Test
     void foodCollideReturnsFalseForNoApple() {
         Apple apple = snake.getAppleToEat();
-        assertFalse(snake.foodCollide(apple.getApple_x() + DOT_SIZE, apple.getApple_y()));
+        assertFalse(snake.foodCollide(apple.getApple_x() + 1, apple.getApple_y()));
     }
 
     @Test
@@ -194,6 +550,30 @@ class SnakeTest {
         assertTrue(clone.inGame);
     }
 
+    @Test
+    void resetBringsBackNewSnakeStateWithNewBrain() {
+        snake.direction = Direction.RIGHT;
+        for (int i = 0; i < 3; i++) {
+            snake.setAppleToEat(new Apple(snake.getX()[0], snake.getY()[0]));
+            snake.checkApple();
+            snake.move();
+        }
+        snake.calculateFitness();
+        Snake replay = snake.cloneForReplay();
+        int replayFood = replay.getFoodList().size();
+
+        NeuralNetwork brain = new NeuralNetwork(26, 24, 3, 2);
+        snake.reset(brain);
+
+        assertSame(brain, snake.getBrain());
+        assertEquals(0, snake.getScore());
+        assertEquals(1, snake.getLength());
+        assertEquals(0, snake.getFitness());
+        assertTrue(snake.inGame);
+        assertTrue(snake.getFoodList().isEmpty());
+        assertEquals(replayFood, replay.getFoodList().size());
+    }
+
     @Test
     void cloneForReplayPreservesFoodListAndStartingPosition() {
         snake.setStartingPosition(snake.new XY(3, 4));
@@ -218,19 +598,19 @@ class SnakeTest {
     void lookInDirectionReturnsDistinctDistancesForDifferentPositions() {
         // Place snake at (10,5) facing RIGHT, wall at board edge (x=200)
         snake.setLength(1);
-        snake.getX()[0] = 100;
-        snake.getY()[0] = 50;
+        snake.getX()[0] = 10;
+        snake.getY()[0] = 5;
         snake.direction = Direction.RIGHT;
 
-        // Place body segment at distance 3 (x=130) to the right
+        // Place body segment at distance 3 (x=13) to the right
         snake.setLength(3);
-        snake.getX()[1] = 130;
-        snake.getY()[1] = 50;
-        snake.getX()[2] = 140;
-        snake.getY()[2] = 50;
+        snake.getX()[1] = 13;
+        snake.getY()[1] = 5;
+        snake.getX()[2] = 14;
+        snake.getY()[2] = 5;
 
         // Look right: wall distance = 1/(cells to wall), body distance = 1/3
-        int[] rightDir = {DOT_SIZE, 0};
+        int[] rightDir = {1, 0};
         double[] result = snake.lookInDirection(rightDir);
 
         // Body at distance 3 -> 1/3 = 0.3333...
@@ -240,7 +620,7 @@ class SnakeTest {
 
         // Wall distance should be precise, not rounded
         double wallDist = result[2];
-        // Wall is at x=200, head at x=100, dotSize=10, so (200-100)/10 = 10 cells away
+        // Wall is at x=20, head at x=10, so 10 cells away
         // But body blocks at 3, wall is at distance 10: 1/10 = 0.1
         assertTrue(wallDist > 0.09 && wallDist < 0.11,
             "Wall distance should be ~0.1, got " + wallDist);
@@ -254,7 +634,7 @@ class SnakeTest {
         // timeLeft < effectiveMax is true and time gets added.
         int bw = 800;
         Snake s = new Snake(bw, bw, DELAY, false, null, DOT_SIZE, Collections.<Wall>emptyList());
-        s.setStartingPosition(s.new XY(10, 10)); // pixel (100, 100)
+        s.setStartingPosition(s.new XY(10, 10));
         s.spawnApple();
         s.setLength(30);
 
@@ -264,7 +644,7 @@ class SnakeTest {
         s.increaseLifeSpan();
 
         // Place apple unreachable so no more eating
-        s.setAppleToEat(new Apple(790, 790));
+        s.setAppleToEat(new Apple(79, 79));
 
         // Move in square loop to avoid walls and self-collision.
         // Perimeter = 4*phaseLen must be > length (30). Use phaseLen=10 -> perimeter=40.
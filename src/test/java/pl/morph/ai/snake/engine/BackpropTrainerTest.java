@@ -0,0 +1,68 @@
+package pl.morph.ai.snake.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackpropTrainerTest {
+
+    private static NeuralNetwork seeded(NeuralNetwork nn, Random random) {
+        for (Matrix w : nn.weights) {
+            for (int i = 0; i < w.size(); i++) {
+                w.data[w.offset + i] = random.nextDouble() * 2 - 1;
+            }
+        }
+        return nn;
+    }
+
+    @Test
+    void studentLearnsDecisionsOfTeacher() {
+        Random random = new Random(3);
+        NeuralNetwork teacher = seeded(new NeuralNetwork(26, 24, 3, 2), random);
+        List<double[]> inputs = new ArrayList<double[]>();
+        for (int n = 0; n < 3000; n++) {
+            double[] input = new double[26];
+            for (int i = 0; i < input.length; i++) {
+                input[i] = random.nextDouble();
+            }
+            inputs.add(input);
+        }
+        int[] labels = teacher.decide(inputs.toArray(new double[inputs.size()][]));
+
+        NeuralNetwork student = seeded(new NeuralNetwork(26, 12, 3, 1), random);
+        BackpropTrainer trainer = new BackpropTrainer(0.003, 32, 1);
+        double firstLoss = trainer.train(student, inputs, labels, 1);
+        double lastLoss = trainer.train(student, inputs, labels, 30);
+
+        assertTrue(lastLoss < firstLoss, firstLoss + " -> " + lastLoss);
+        assertTrue(PolicyComparison.agreement(labels, student, inputs) > 0.9);
+    }
+
+    @Test
+    void gradientStepLowersLossOfSingleSample() {
+        NeuralNetwork nn = new NeuralNetwork(4, 5, 3, 2);
+        List<double[]> inputs = new ArrayList<double[]>();
+        inputs.add(new double[]{0.5, 0.1, 0.9, 0.3});
+        int[] labels = {2};
+        BackpropTrainer trainer = new BackpropTrainer(0.01, 1, 1);
+
+        double before = trainer.train(nn, inputs, labels, 1);
+        double after = trainer.train(nn, inputs, labels, 1);
+        assertTrue(after < before, before + " -> " + after);
+    }
+
+    @Test
+    void floatNetworkIsRejected() {
+        final NeuralNetwork nn = new NeuralNetwork(4, 5, 3, 1, Precision.FLOAT);
+        assertThrows(IllegalStateException.class, new Executable() {
+            public void execute() {
+                new BackpropTrainer(0.01, 1, 1).train(nn, new ArrayList<double[]>(), new int[0], 1);
+            }
+        });
+    }
+}
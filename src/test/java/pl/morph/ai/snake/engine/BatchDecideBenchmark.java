@@ -0,0 +1,81 @@
+package pl.morph.ai.snake.engine;
+
+import java.util.Random;
+
+/**
+ * One network over many inputs: looping over {@link NeuralNetwork#output(double[])} and
+ * {@link NeuralNetwork#decide(double[])} against the batched {@link NeuralNetwork#decide(double[][], int[], int, int)},
+ * then sequential games against {@link EpisodeRunner#evaluate(NeuralNetwork, int)}. Not a unit test, run it from the
+ * test class path:
+ * {@code java -cp target/classes:target/test-classes pl.morph.ai.snake.engine.BatchDecideBenchmark}
+ */
+public class BatchDecideBenchmark {
+    private static final int INPUTS = 4096;
+    private static final int REPEATS = 200;
+    private static final int EPISODES = 256;
+    // Written after each measurement so the decisions are not optimized away
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        double[][] inputs = new double[INPUTS][26];
+        for (double[] input : inputs) {
+            for (int i = 0; i < input.length; i++) {
+                // Vision values are reciprocals of small distances
+                input[i] = random.nextInt(4) == 0 ? 0 : 1.0 / (1 + random.nextInt(20));
+            }
+        }
+
+        for (Precision precision : Precision.values()) {
+            NeuralNetwork network = new NeuralNetwork(26, 24, 3, 2, precision);
+            for (int round = 0; round < 5; round++) {
+                double output = measure(network, inputs, 0);
+                double single = measure(network, inputs, 1);
+                double batched = measure(network, inputs, 2);
+                System.out.println(String.format("%-6s output(): %,.0f/s   decide(): %,.0f/s   batched: %,.0f/s   (x%.2f over output())",
+                        precision, output, single, batched, batched / output));
+            }
+        }
+
+        EpisodeRunner runner = new EpisodeRunner();
+        NeuralNetwork network = new NeuralNetwork(26, 24, 3, 2);
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < EPISODES; i++) {
+                runner.play(network, network, null);
+            }
+            long sequential = System.nanoTime() - start;
+            start = System.nanoTime();
+            runner.evaluate(network, EPISODES);
+            long lockstep = System.nanoTime() - start;
+            System.out.println(String.format("%d episodes   sequential: %.1f ms   lockstep: %.1f ms",
+                    EPISODES, sequential / 1e6, lockstep / 1e6));
+        }
+    }
+
+    // mode 0 loops over output(), 1 over decide(), 2 is the batched decide()
+    private static double measure(NeuralNetwork network, double[][] inputs, int mode) {
+        double[] output = new double[3];
+        int[] decisions = new int[inputs.length];
+        long total = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < REPEATS; r++) {
+            if (mode == 2) {
+                network.decide(inputs, decisions, 0, inputs.length);
+                total += decisions[r];
+                continue;
+            }
+            for (double[] input : inputs) {
+                if (mode == 1) {
+                    total += network.decide(input);
+                } else {
+                    network.output(input, output);
+                    total += NeuralNetwork.argmax(output);
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        sink = total;
+        return (double) REPEATS * inputs.length * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,72 @@
+package pl.morph.ai.snake.engine;
+
+import java.util.Random;
+
+/**
+ * Decisions per second of the generic kernels against the {@link NetworkSpecializer} class for the default
+ * snake topology. Not a unit test, run it from the test class path:
+ * {@code java -cp target/classes:target/test-classes pl.morph.ai.snake.engine.DecideBenchmark}
+ */
+public class DecideBenchmark {
+    private static final int NETWORKS = 256;
+    private static final int INPUTS = 1024;
+    // Written after each measurement so the decisions are not optimized away
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        double[][] inputs = new double[INPUTS][26];
+        for (double[] input : inputs) {
+            for (int i = 0; i < input.length; i++) {
+                input[i] = random.nextDouble();
+            }
+        }
+
+        for (Precision precision : Precision.values()) {
+            NeuralNetwork[] networks = new NeuralNetwork[NETWORKS];
+            for (int n = 0; n < NETWORKS; n++) {
+                networks[n] = new NeuralNetwork(26, 24, 3, 2, precision);
+            }
+            if (NetworkSpecializer.forTopology(26, 24, 3, 2) == null) {
+                System.out.println("No specialized network on this runtime");
+                return;
+            }
+
+            for (int round = 0; round < 5; round++) {
+                double generic = measure(networks, inputs, false);
+                double special = measure(networks, inputs, true);
+                System.out.println(String.format("%-6s generic %s: %,.0f/s   specialized: %,.0f/s   (x%.2f)",
+                        precision, DenseKernels.get().name(), generic, special, special / generic));
+            }
+        }
+    }
+
+    private static double measure(NeuralNetwork[] networks, double[][] inputs, boolean specialized) {
+        SpecializedNetwork special = NetworkSpecializer.forTopology(26, 24, 3, 2);
+        int[] offsets = new int[networks[0].weights.length];
+        double[] scratch = new double[networks[0].scratchSize()];
+        float[] floats = new float[networks[0].scratchSize()];
+        long total = 0;
+        long start = System.nanoTime();
+        for (NeuralNetwork network : networks) {
+            double[][] data = new double[network.weights.length][];
+            float[][] floatData = new float[network.weights.length][];
+            for (int l = 0; l < data.length; l++) {
+                data[l] = network.weights[l].data;
+                floatData[l] = network.weights[l].floats;
+            }
+            for (double[] input : inputs) {
+                if (specialized) {
+                    total += network.getPrecision() == Precision.FLOAT
+                            ? special.decide(floatData, offsets, input, floats)
+                            : special.decide(data, offsets, input, scratch);
+                } else {
+                    total += network.decideGeneric(input);
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        sink = total;
+        return (double) networks.length * inputs.length * 1e9 / elapsed;
+    }
+}
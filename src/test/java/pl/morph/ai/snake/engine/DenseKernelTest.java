@@ -0,0 +1,140 @@
+package pl.morph.ai.snake.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class DenseKernelTest {
+
+    @Test
+    void scalarKernelMatchesMatrixDot() {
+        Matrix w = new Matrix(4, 6);
+        w.randomize();
+        double[] input = {0.5, -1, 0.25, 1, 0.1};
+        double[] out = new double[4];
+
+        DenseKernels.scalar().dense(w.data, 0, 4, 6, input, 0, out, 0, false);
+
+        Matrix expected = w.dot(w.singleColumnMatrixFromArray(input).addBias());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(expected.get(i, 0), out[i]);
+        }
+    }
+
+    @Test
+    void argmaxReturnsFirstLargest() {
+        DenseKernel kernel = DenseKernels.get();
+        assertEquals(1, kernel.argmax(new double[]{0.2, 0.5, 0.3}, 0, 3));
+        assertEquals(0, kernel.argmax(new double[]{0.4, 0.4, 0.2}, 0, 3));
+        assertEquals(1, kernel.argmax(new double[]{9, -3, -1, -2}, 1, 3));
+        assertEquals(2, kernel.argmax(new float[]{-1f, 0.5f, 0.7f, 0.7f}, 0, 4));
+    }
+
+    @Test
+    void vectorKernelMakesSameDecisionsAsScalarKernel() {
+        DenseKernel vector = DenseKernels.vector();
+        assumeTrue(vector != null, "Vector API kernel not available on this runtime");
+
+        // The kernels round differently (see DenseKernel), these inputs hold no near-ties where that would show
+        DenseKernel scalar = DenseKernels.scalar();
+        Random random = new Random(42);
+        for (int n = 0; n < 200; n++) {
+            NeuralNetwork nn = new NeuralNetwork(26, 24, 3, 2, n % 2 == 0 ? Precision.DOUBLE : Precision.FLOAT);
+            double[] input = new double[26];
+            for (int i = 0; i < input.length; i++) {
+                // Vision values are reciprocals of small distances
+                input[i] = random.nextInt(4) == 0 ? 0 : 1.0 / (1 + random.nextInt(20));
+            }
+            assertEquals(decide(scalar, nn, input), decide(vector, nn, input), "network " + n);
+        }
+
+        double[] values = new double[37];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian();
+        }
+        assertEquals(scalar.argmax(values, 0, values.length), vector.argmax(values, 0, values.length));
+        assertEquals(scalar.argmax(values, 5, 20), vector.argmax(values, 5, 20));
+
+        float[] floats = new float[37];
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = (float) random.nextGaussian();
+        }
+        assertEquals(scalar.argmax(floats, 0, floats.length), vector.argmax(floats, 0, floats.length));
+        assertEquals(scalar.argmax(floats, 3, 30), vector.argmax(floats, 3, 30));
+    }
+
+    @Test
+    void denseBatchMatchesScalarDenseForEveryRow() {
+        DenseKernel scalar = DenseKernels.scalar();
+        DenseKernel[] kernels = {scalar, DenseKernels.vector()};
+        Matrix w = new Matrix(5, 12);
+        w.randomize();
+        Matrix floatW = w.toPrecision(Precision.FLOAT);
+        // 19 rows of 11 values, feature-major with a stride of 20: whole vectors and a tail for every lane count
+        double[] in = new double[2 + 11 * 20];
+        float[] floatIn = new float[in.length];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = Math.random() - 0.5;
+            floatIn[i] = (float) in[i];
+        }
+
+        for (DenseKernel kernel : kernels) {
+            if (kernel == null) {
+                continue;
+            }
+            double[] batch = new double[1 + 5 * 20];
+            float[] floatBatch = new float[batch.length];
+            kernel.denseBatch(w.data, 0, 5, 12, in, 2, batch, 1, 20, 19, true);
+            kernel.denseBatch(floatW.floats, 0, 5, 12, floatIn, 2, floatBatch, 1, 20, 19, false);
+
+            for (int b = 0; b < 19; b++) {
+                double[] row = new double[11];
+                float[] floatRow = new float[11];
+                for (int k = 0; k < 11; k++) {
+                    row[k] = in[2 + k * 20 + b];
+                    floatRow[k] = floatIn[2 + k * 20 + b];
+                }
+                double[] out = new double[5];
+                float[] floatOut = new float[5];
+                scalar.dense(w.data, 0, 5, 12, row, 0, out, 0, true);
+                scalar.dense(floatW.floats, 0, 5, 12, floatRow, 0, floatOut, 0, false);
+                for (int i = 0; i < 5; i++) {
+                    assertEquals(out[i], batch[1 + i * 20 + b], kernel.name() + " row " + b);
+                    assertEquals(floatOut[i], floatBatch[1 + i * 20 + b], kernel.name() + " row " + b);
+                }
+            }
+        }
+    }
+
+    private static int decide(DenseKernel kernel, NeuralNetwork nn, double[] input) {
+        double[] logits = new double[nn.oNodes];
+        if (nn.getPrecision() == Precision.FLOAT) {
+            float[] curr = new float[input.length];
+            for (int i = 0; i < input.length; i++) {
+                curr[i] = (float) input[i];
+            }
+            for (int l = 0; l < nn.weights.length; l++) {
+                Matrix w = nn.weights[l];
+                float[] next = new float[w.rows];
+                kernel.dense(w.floats, 0, w.rows, w.cols, curr, 0, next, 0, l < nn.hLayers);
+                curr = next;
+            }
+            for (int i = 0; i < logits.length; i++) {
+                logits[i] = curr[i];
+            }
+        } else {
+            double[] curr = input;
+            for (int l = 0; l < nn.weights.length; l++) {
+                Matrix w = nn.weights[l];
+                double[] next = new double[w.rows];
+                kernel.dense(w.data, 0, w.rows, w.cols, curr, 0, next, 0, l < nn.hLayers);
+                curr = next;
+            }
+            logits = curr;
+        }
+        return kernel.argmax(logits, 0, logits.length);
+    }
+}
@@ -0,0 +1,84 @@
+package pl.morph.ai.snake.engine;
+
+import org.junit.jupiter.api.Test;
+import pl.morph.ai.snake.element.Snake;
+import pl.morph.ai.snake.element.Wall;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EvolutionStrategiesTest {
+
+    private static Snake snake(NeuralNetwork brain) {
+        return new Snake(80, 80, 0, false, null, 40, Collections.<Wall>emptyList(), brain);
+    }
+
+    // Squared distance of every weight from 0.5
+    private static double distance(NeuralNetwork brain) {
+        double sum = 0;
+        for (Matrix w : brain.weights) {
+            for (int i = 0; i < w.size(); i++) {
+                sum += (w.data[w.offset + i] - 0.5) * (w.data[w.offset + i] - 0.5);
+            }
+        }
+        return sum;
+    }
+
+    @Test
+    void centeredRanksDependOnlyOnOrder() {
+        double[] ranks = EvolutionStrategies.centeredRanks(new double[]{5, 1e9, -3, 7});
+        assertArrayEquals(new double[]{-1.0 / 6, 0.5, -0.5, 1.0 / 6}, ranks, 1e-12);
+    }
+
+    @Test
+    void pairsAreMirroredAroundTheCenter() {
+        NeuralNetwork start = new NeuralNetwork(4, 5, 3, 1);
+        NeuralNetwork[] next = new NeuralNetwork[7];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = new NeuralNetwork(4, 5, 3, 1);
+        }
+        new EvolutionStrategies(0.1, 0.01, 1).breed(Collections.singletonList(snake(start)), next, 2);
+
+        for (int l = 0; l < start.weights.length; l++) {
+            for (int i = 0; i < start.weights[l].size(); i++) {
+                double center = start.weights[l].data[i];
+                assertEquals(2 * center, next[2].weights[l].data[i] + next[3].weights[l].data[i], 1e-9);
+                assertEquals(2 * center, next[4].weights[l].data[i] + next[5].weights[l].data[i], 1e-9);
+                // Odd member out plays the center
+                assertEquals(center, next[6].weights[l].data[i], 1e-12);
+            }
+        }
+        assertNotEquals(next[2].weights[0].data[0], next[4].weights[0].data[0]);
+    }
+
+    @Test
+    void centerClimbsTowardsHigherFitness() {
+        EvolutionStrategies es = new EvolutionStrategies(0.05, 0.05, 7);
+        NeuralNetwork[] next = new NeuralNetwork[40];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = new NeuralNetwork(3, 4, 2, 1);
+        }
+        NeuralNetwork start = new NeuralNetwork(3, 4, 2, 1);
+        double startDistance = distance(start);
+
+        List<Snake> generation = Collections.singletonList(snake(start));
+        for (int g = 0; g < 150; g++) {
+            es.breed(generation, next, 0);
+            List<Snake> played = new ArrayList<Snake>();
+            for (NeuralNetwork brain : next) {
+                played.add(snake(brain).setFitness(-distance(brain)));
+            }
+            generation = played;
+        }
+
+        // The last member of an even population is a perturbation, not the center, so compare the mean
+        double meanDistance = 0;
+        for (NeuralNetwork brain : next) {
+            meanDistance += distance(brain) / next.length;
+        }
+        assertTrue(meanDistance < startDistance / 4, startDistance + " -> " + meanDistance);
+    }
+}
@@ -0,0 +1,40 @@
+package pl.morph.ai.snake.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlatEvolutionTest {
+
+    @Test
+    void fittestSnakesSurviveIntoTheNextGeneration() throws Exception {
+        FlatEvolution evolution = new FlatEvolution(300, Precision.FLOAT, 3);
+        NeuralNetwork[] played = new NeuralNetwork[300];
+        for (int id = 0; id < played.length; id++) {
+            played[id] = evolution.arena.brain(id).clone();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            evolution.step(executor, 3);
+        } finally {
+            executor.shutdown();
+        }
+
+        int best = 0;
+        for (int id = 1; id < played.length; id++) {
+            if (evolution.simulation.getFitness(id) > evolution.simulation.getFitness(best)) {
+                best = id;
+            }
+        }
+        assertEquals(1, evolution.getGeneration());
+        assertEquals(evolution.simulation.getScore(best), evolution.getBestScore());
+        assertTrue(evolution.getTicks() >= 300);
+        NeuralNetwork elite = evolution.arena.brain(0).clone();
+        for (int l = 0; l < elite.weights.length; l++) {
+            assertArrayEquals(played[best].weights[l].floats, elite.weights[l].floats);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package pl.morph.ai.snake.engine;
+
+import pl.morph.ai.snake.element.Snake;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Heap per snake and ticks per second of one {@link FlatEvolution} generation against the same number of
+ * {@link Snake} objects with their own networks, played one after another. Not a unit test, run it from the test
+ * class path with a heap large enough for the population:
+ * {@code java -Xmx2g -cp target/classes:target/test-classes pl.morph.ai.snake.engine.FlatSimulationBenchmark [flatPopulation] [objectPopulation]}
+ */
+public class FlatSimulationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int flatPopulation = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int objectPopulation = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int workers = Runtime.getRuntime().availableProcessors();
+
+        long before = usedHeap();
+        FlatEvolution evolution = new FlatEvolution(flatPopulation, Precision.FLOAT, 1);
+        long flatBytes = usedHeap() - before;
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            // The first generation warms up, the second is measured
+            evolution.step(executor, workers);
+            long start = System.nanoTime();
+            evolution.step(executor, workers);
+            long elapsed = System.nanoTime() - start;
+            report("flat, FLOAT", flatPopulation, flatBytes, evolution.getTicks(), elapsed);
+        } finally {
+            executor.shutdownNow();
+        }
+        evolution = null;
+
+        EpisodeRunner runner = new EpisodeRunner();
+        before = usedHeap();
+        Snake[] snakes = new Snake[objectPopulation];
+        for (int i = 0; i < objectPopulation; i++) {
+            snakes[i] = runner.newSnake(new NeuralNetwork(26, 24, 3, 2, Precision.FLOAT));
+        }
+        long objectBytes = usedHeap() - before;
+        for (int round = 0; round < 2; round++) {
+            long ticks = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < objectPopulation; i++) {
+                Snake snake = round == 0 ? snakes[i] : runner.newSnake(snakes[i].getBrain());
+                runner.play(snake, snake.getBrain(), null);
+                ticks += snake.getLifetime();
+            }
+            if (round == 1) {
+                report("Snake objects, FLOAT", objectPopulation, objectBytes, ticks, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static void report(String model, int population, long bytes, long ticks, long elapsed) {
+        System.out.println(String.format("%-22s %,8d snakes  %,6d MB  %,7d bytes/snake  %,12.0f ticks/s",
+                model, population, bytes >> 20, bytes / population, ticks * 1e9 / elapsed));
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
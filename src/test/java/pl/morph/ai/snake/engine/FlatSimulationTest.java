@@ -0,0 +1,96 @@
+package pl.morph.ai.snake.engine;
+
+import org.junit.jupiter.api.Test;
+import pl.morph.ai.snake.element.Direction;
+import pl.morph.ai.snake.element.Snake;
+import pl.morph.ai.snake.element.Wall;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlatSimulationTest {
+
+    private static final int COUNT = 200;
+
+    private final List<Wall> walls = new ArrayList<Wall>();
+    private final NeuralNetwork[] brains = new NeuralNetwork[COUNT];
+    private final Snake[] snakes = new Snake[COUNT];
+    private final FlatSimulation flat = new FlatSimulation(10, 10, walls, COUNT);
+
+    FlatSimulationTest() {
+        walls.add(new Wall(3, 3));
+        walls.add(new Wall(3, 4));
+        walls.add(new Wall(7, 8));
+        Random random = new Random(4);
+        for (int i = 0; i < COUNT; i++) {
+            brains[i] = new NeuralNetwork(26, 24, 3, 2);
+            Direction heading = Direction.values()[random.nextInt(4)];
+            Snake snake = new Snake(100, 100, 0, false, null, 10, walls, brains[i]);
+            snake.setRandom(new Random(1000 + i));
+            snake.startingDirection = heading;
+            snake.direction = heading;
+            snake.setRandomStartingPosition();
+            snake.spawnApple();
+            snakes[i] = snake;
+            flat.start(i, brains[i], heading, 1000 + i);
+        }
+    }
+
+    @Test
+    void seesAndMovesLikeTheSnakesOfTheSameSeeds() {
+        boolean any = true;
+        while (any) {
+            any = false;
+            for (int i = 0; i < COUNT; i++) {
+                Snake snake = snakes[i];
+                assertEquals(snake.inGame, flat.isAlive(i));
+                if (!snake.inGame) {
+                    continue;
+                }
+                snake.look();
+                flat.look(i);
+                assertArrayEquals(snake.getVision(), flat.getVision(i), "snake " + i);
+                int decision = brains[i].decide(snake.getVision());
+                snake.act(decision);
+                flat.act(i, decision);
+                snake.move();
+                flat.move(i);
+                assertEquals(snake.getLength(), flat.getLength(i));
+                any |= snake.inGame;
+            }
+        }
+    }
+
+    @Test
+    void playsToTheFitnessOfTheSnakesOfTheSameSeeds() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            flat.play(executor, 3);
+        } finally {
+            executor.shutdown();
+        }
+        flat.calculateFitness();
+
+        int eaten = 0;
+        for (int i = 0; i < COUNT; i++) {
+            Snake snake = snakes[i];
+            while (snake.inGame) {
+                snake.look();
+                snake.think();
+                snake.move();
+            }
+            snake.calculateFitness();
+            assertFalse(flat.isAlive(i));
+            assertEquals(snake.getScore(), flat.getScore(i), "snake " + i);
+            assertEquals(snake.getFitness(), flat.getFitness(i), "snake " + i);
+            eaten += snake.getScore();
+        }
+        // Random brains on a small board, some of them still find apples
+        assertTrue(eaten > 0);
+    }
+}
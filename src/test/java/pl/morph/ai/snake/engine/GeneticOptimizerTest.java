@@ -0,0 +1,45 @@
+package pl.morph.ai.snake.engine;
+
+import org.junit.jupiter.api.Test;
+import pl.morph.ai.snake.element.Snake;
+import pl.morph.ai.snake.element.Wall;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeneticOptimizerTest {
+
+    @Test
+    void elitesAreCarriedOverUnchanged() {
+        List<Snake> generation = new ArrayList<Snake>();
+        for (int i = 0; i < 20; i++) {
+            Snake snake = new Snake(80, 80, 0, false, null, 40, Collections.<Wall>emptyList(), new NeuralNetwork(4, 5, 3, 1));
+            generation.add(snake.setFitness(20 - i));
+        }
+        NeuralNetwork[] next = new NeuralNetwork[20];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = new NeuralNetwork(4, 5, 3, 1, Precision.DOUBLE, false);
+        }
+
+        GeneticOptimizer genetic = new GeneticOptimizer();
+        genetic.setMutationRate(1);
+        genetic.breed(generation, next, 1);
+
+        // Slot 0 belongs to the engine's replay snake
+        assertEquals(0, next[0].weights[0].data[0]);
+        for (int i = 0; i < GeneticOptimizer.ELITISM_COUNT; i++) {
+            for (int l = 0; l < next[i + 1].weights.length; l++) {
+                assertArrayEquals(generation.get(i).getBrain().weights[l].data, next[i + 1].weights[l].data);
+            }
+        }
+        // Every weight of a child was mutated, so none is one of the parents' weights any more
+        for (int i = GeneticOptimizer.ELITISM_COUNT + 1; i < next.length; i++) {
+            for (Snake parent : generation) {
+                assertNotEquals(parent.getBrain().weights[0].data[0], next[i].weights[0].data[0]);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package pl.morph.ai.snake.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GenomeArenaTest {
+
+    @Test
+    void genomesOfOneGenerationShareOneSlab() {
+        GenomeArena arena = new GenomeArena(new NeuralNetwork(26, 24, 3, 2), Precision.DOUBLE, 10);
+        NeuralNetwork first = arena.nextBrain(0);
+        NeuralNetwork second = arena.nextBrain(1);
+
+        assertSame(first.weights[0].data, second.weights[2].data);
+        assertEquals(first.weights[2].offset + first.weights[2].size(), second.weights[0].offset);
+    }
+
+    @Test
+    void swapAlternatesBetweenTwoGenerations() {
+        GenomeArena arena = new GenomeArena(new NeuralNetwork(4, 5, 2, 1), Precision.FLOAT, 3);
+        NeuralNetwork a = arena.nextBrain(2);
+        arena.swap();
+        NeuralNetwork b = arena.nextBrain(2);
+        arena.swap();
+
+        assertNotSame(a.weights[0].floats, b.weights[0].floats);
+        assertSame(a, arena.nextBrain(2));
+    }
+
+    @Test
+    void geneticOperatorsStayInsideTheirGenome() {
+        GenomeArena arena = new GenomeArena(new NeuralNetwork(26, 24, 3, 2), Precision.DOUBLE, 3);
+        NeuralNetwork parent = new NeuralNetwork(26, 24, 3, 2);
+        NeuralNetwork partner = new NeuralNetwork(26, 24, 3, 2);
+        NeuralNetwork child = arena.nextBrain(1);
+
+        parent.crossoverInto(partner, child);
+        child.mutate(1.0);
+        double[] slab = child.weights[0].data;
+        int genome = child.weights[0].offset;
+        int genomeSize = 24 * 27 + 24 * 25 + 3 * 25;
+        for (int i = 0; i < slab.length; i++) {
+            if (i < genome || i >= genome + genomeSize) {
+                assertEquals(0, slab[i]);
+            }
+        }
+
+        double[] input = new double[26];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = Math.random();
+        }
+        assertArrayEquals(child.clone().output(input), child.output(input));
+        assertEquals(child.clone().decide(input), child.decide(input));
+    }
+
+    @Test
+    void savedViewContainsOnlyItsOwnGenome() throws Exception {
+        GenomeArena arena = new GenomeArena(new NeuralNetwork(26, 24, 3, 2), Precision.DOUBLE, 50);
+        NeuralNetwork view = arena.nextBrain(7);
+        view.randomize();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(view);
+        }
+        assertTrue(bytes.size() < 20000);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            NeuralNetwork read = (NeuralNetwork) in.readObject();
+            assertEquals(0, read.weights[1].offset);
+            assertArrayEquals(view.weights[1].toArray(), read.weights[1].data);
+        }
+    }
+}
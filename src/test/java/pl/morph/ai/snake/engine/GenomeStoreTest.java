@@ -0,0 +1,82 @@
+package pl.morph.ai.snake.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GenomeStoreTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void directStoreRoundTripsGenomes() {
+        NeuralNetwork a = new NeuralNetwork(26, 24, 3, 2);
+        NeuralNetwork b = new NeuralNetwork(26, 24, 3, 2);
+        GenomeStore store = GenomeStore.allocateDirect(a, Precision.DOUBLE, 100);
+        store.write(0, a);
+        store.write(99, b);
+
+        assertArrayEquals(a.weights[1].data, store.read(0).weights[1].data);
+        NeuralNetwork into = new NeuralNetwork(26, 24, 3, 2, Precision.DOUBLE, false);
+        store.read(99, into);
+        assertArrayEquals(b.weights[2].data, into.weights[2].data);
+    }
+
+    @Test
+    void genomesSpreadOverSegmentsStayApart() throws IOException {
+        NeuralNetwork shape = new NeuralNetwork(4, 5, 2, 1);
+        // 37 values of 8 bytes per genome, three genomes per segment
+        final GenomeStore store = GenomeStore.open(new File(dir, "segments.genomes"), shape, Precision.DOUBLE, 10, 37 * 8 * 3);
+        NeuralNetwork[] networks = new NeuralNetwork[10];
+        for (int i = 0; i < networks.length; i++) {
+            networks[i] = new NeuralNetwork(4, 5, 2, 1);
+            store.write(i, networks[i]);
+        }
+        for (int i = 0; i < networks.length; i++) {
+            NeuralNetwork read = store.read(i);
+            assertArrayEquals(networks[i].weights[0].data, read.weights[0].data);
+            assertArrayEquals(networks[i].weights[1].data, read.weights[1].data);
+        }
+        assertThrows(IndexOutOfBoundsException.class, new Executable() {
+            public void execute() {
+                store.read(10);
+            }
+        });
+        store.close();
+    }
+
+    @Test
+    void reopenedFileKeepsGenomesAndHeader() throws IOException {
+        final File file = new File(dir, "population.genomes");
+        NeuralNetwork network = new NeuralNetwork(26, 24, 3, 2);
+        GenomeArena arena = new GenomeArena(network, Precision.FLOAT, 4);
+        NeuralNetwork view = arena.nextBrain(3);
+        network.copyInto(view);
+
+        GenomeStore store = GenomeStore.open(file, network, Precision.FLOAT, 4);
+        store.write(2, view);
+        store.setSize(3);
+        store.setGeneration(41);
+        store.close();
+
+        GenomeStore reopened = GenomeStore.open(file);
+        assertEquals(Precision.FLOAT, reopened.getPrecision());
+        assertEquals(4, reopened.capacity());
+        assertEquals(3, reopened.size());
+        assertEquals(41, reopened.getGeneration());
+        assertArrayEquals(view.weights[0].toArray(), reopened.read(2).weights[0].toArray());
+        reopened.close();
+
+        assertThrows(IOException.class, new Executable() {
+            public void execute() throws IOException {
+                GenomeStore.open(file, new NeuralNetwork(26, 16, 3, 2), Precision.FLOAT, 4);
+            }
+        });
+    }
+}
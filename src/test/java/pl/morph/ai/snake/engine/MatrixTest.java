@@ -2,6 +2,12 @@ package pl.morph.ai.snake.engine;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Base64;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class MatrixTest {
@@ -11,8 +17,7 @@ class MatrixTest {
         Matrix m = new Matrix(3, 4);
         assertEquals(3, m.rows);
         assertEquals(4, m.cols);
-        assertEquals(3, m.matrix.length);
-        assertEquals(4, m.matrix[0].length);
+        assertEquals(12, m.data.length);
     }
 
     @Test
@@ -21,7 +26,7 @@ class MatrixTest {
         Matrix m = new Matrix(data);
         assertEquals(3, m.rows);
         assertEquals(2, m.cols);
-        assertEquals(4.0, m.matrix[1][1]);
+        assertEquals(4.0, m.get(1, 1));
     }
 
     @Test
@@ -31,8 +36,8 @@ class MatrixTest {
         boolean hasNonZero = false;
         for (int i = 0; i < m.rows; i++) {
             for (int j = 0; j < m.cols; j++) {
-                assertTrue(m.matrix[i][j] >= -1 && m.matrix[i][j] <= 1);
-                if (m.matrix[i][j] != 0) hasNonZero = true;
+                assertTrue(m.get(i, j) >= -1 && m.get(i, j) <= 1);
+                if (m.get(i, j) != 0) hasNonZero = true;
             }
         }
         assertTrue(hasNonZero, "randomize should produce non-zero values");
@@ -48,10 +53,10 @@ class MatrixTest {
 
         assertEquals(2, result.rows);
         assertEquals(2, result.cols);
-        assertEquals(19.0, result.matrix[0][0]); // 1*5 + 2*7
-        assertEquals(22.0, result.matrix[0][1]); // 1*6 + 2*8
-        assertEquals(43.0, result.matrix[1][0]); // 3*5 + 4*7
-        assertEquals(50.0, result.matrix[1][1]); // 3*6 + 4*8
+        assertEquals(19.0, result.get(0, 0)); // 1*5 + 2*7
+        assertEquals(22.0, result.get(0, 1)); // 1*6 + 2*8
+        assertEquals(43.0, result.get(1, 0)); // 3*5 + 4*7
+        assertEquals(50.0, result.get(1, 1)); // 3*6 + 4*8
     }
 
     @Test
@@ -60,10 +65,10 @@ class MatrixTest {
         Matrix m = new Matrix(data);
         Matrix activated = m.activate();
 
-        assertEquals(0.0, activated.matrix[0][0]);
-        assertEquals(3.0, activated.matrix[0][1]);
-        assertEquals(0.0, activated.matrix[1][0]);
-        assertEquals(0.0, activated.matrix[1][1]);
+        assertEquals(0.0, activated.get(0, 0));
+        assertEquals(3.0, activated.get(0, 1));
+        assertEquals(0.0, activated.get(1, 0));
+        assertEquals(0.0, activated.get(1, 1));
     }
 
     @Test
@@ -75,8 +80,8 @@ class MatrixTest {
         double sum = 0;
         for (int i = 0; i < sm.rows; i++) {
             for (int j = 0; j < sm.cols; j++) {
-                assertTrue(sm.matrix[i][j] >= 0);
-                sum += sm.matrix[i][j];
+                assertTrue(sm.get(i, j) >= 0);
+                sum += sm.get(i, j);
             }
         }
         assertEquals(1.0, sum, 1e-9);
@@ -90,9 +95,9 @@ class MatrixTest {
 
         assertEquals(3, biased.rows);
         assertEquals(1, biased.cols);
-        assertEquals(2.0, biased.matrix[0][0]);
-        assertEquals(3.0, biased.matrix[1][0]);
-        assertEquals(1.0, biased.matrix[2][0]);
+        assertEquals(2.0, biased.get(0, 0));
+        assertEquals(3.0, biased.get(1, 0));
+        assertEquals(1.0, biased.get(2, 0));
     }
 
     @Test
@@ -105,13 +110,52 @@ class MatrixTest {
         boolean anyChanged = false;
         for (int i = 0; i < m.rows; i++) {
             for (int j = 0; j < m.cols; j++) {
-                assertTrue(m.matrix[i][j] >= -1 && m.matrix[i][j] <= 1);
-                if (m.matrix[i][j] != original.matrix[i][j]) anyChanged = true;
+                assertTrue(m.get(i, j) >= -1 && m.get(i, j) <= 1);
+                if (m.get(i, j) != original.get(i, j)) anyChanged = true;
             }
         }
         assertTrue(anyChanged, "mutate with rate 1.0 should change at least some values");
     }
 
+    @Test
+    void mutateChangesAboutRateShareOfValues() {
+        for (Precision precision : Precision.values()) {
+            int changed = 0;
+            for (int run = 0; run < 20; run++) {
+                Matrix m = new Matrix(100, 100, precision);
+                m.randomize();
+                Matrix original = m.clone();
+                m.mutate(0.03);
+                for (int i = 0; i < m.size(); i++) {
+                    assertTrue(m.get(i / 100, i % 100) >= -1 && m.get(i / 100, i % 100) <= 1);
+                    if (m.get(i / 100, i % 100) != original.get(i / 100, i % 100)) changed++;
+                }
+            }
+            // 20 * 10000 * 0.03 = 6000 expected, standard deviation about 76
+            assertTrue(changed > 5600 && changed < 6400, precision + " changed " + changed);
+        }
+    }
+
+    @Test
+    void mutateWithZeroRateChangesNothing() {
+        Matrix m = new Matrix(10, 10);
+        m.randomize();
+        Matrix original = m.clone();
+        m.mutate(0);
+        assertArrayEquals(original.data, m.data);
+    }
+
+    @Test
+    void mutateWithVanishingRateChangesNothing() {
+        Matrix m = new Matrix(10, 10);
+        m.randomize();
+        Matrix original = m.clone();
+        // 1 - rate rounds to 1 here
+        m.mutate(1e-17);
+        m.mutate(1e-300);
+        assertArrayEquals(original.data, m.data);
+    }
+
     @Test
     void crossoverProducesChildWithValuesFromBothParents() {
         Matrix a = new Matrix(5, 5);
@@ -119,8 +163,8 @@ class MatrixTest {
         // Fill with distinct values
         for (int i = 0; i < 5; i++) {
             for (int j = 0; j < 5; j++) {
-                a.matrix[i][j] = 0.5;
-                b.matrix[i][j] = -0.5;
+                a.set(i, j, 0.5);
+                b.set(i, j, -0.5);
             }
         }
         Matrix child = a.crossover(b);
@@ -128,8 +172,8 @@ class MatrixTest {
         boolean hasA = false, hasB = false;
         for (int i = 0; i < 5; i++) {
             for (int j = 0; j < 5; j++) {
-                if (child.matrix[i][j] == 0.5) hasA = true;
-                if (child.matrix[i][j] == -0.5) hasB = true;
+                if (child.get(i, j) == 0.5) hasA = true;
+                if (child.get(i, j) == -0.5) hasB = true;
             }
         }
         assertTrue(hasA || hasB, "Child should contain values from at least one parent");
@@ -144,13 +188,13 @@ class MatrixTest {
         // Same values
         for (int i = 0; i < 3; i++) {
             for (int j = 0; j < 3; j++) {
-                assertEquals(m.matrix[i][j], c.matrix[i][j]);
+                assertEquals(m.get(i, j), c.get(i, j));
             }
         }
 
         // Independent - modifying clone doesn't affect original
-        c.matrix[0][0] = 999;
-        assertNotEquals(999, m.matrix[0][0]);
+        c.set(0, 0, 999);
+        assertNotEquals(999, m.get(0, 0));
     }
 
     @Test
@@ -165,4 +209,50 @@ class MatrixTest {
         double[] result = col.toArray();
         assertArrayEquals(arr, result, 1e-9);
     }
+
+    @Test
+    void feedForwardMatchesDotWithBiasAndRelu() {
+        double[][] data = {{1, -2, 0.5}, {-1, -1, -0.5}};
+        Matrix w = new Matrix(data);
+        double[] input = {3, 1};
+
+        double[] out = new double[2];
+        w.feedForward(input, out, true);
+        Matrix expected = w.dot(w.singleColumnMatrixFromArray(input).addBias()).activate();
+        assertEquals(expected.get(0, 0), out[0]); // 3 - 2 + 0.5
+        assertEquals(expected.get(1, 0), out[1]); // relu(-4.5)
+
+        w.feedForward(input, out, false);
+        assertEquals(-4.5, out[1]);
+    }
+
+    @Test
+    void serializationRoundTripKeepsValues() throws Exception {
+        Matrix m = new Matrix(new double[][]{{1, 2}, {3, 4}});
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(m);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Matrix read = (Matrix) in.readObject();
+            assertEquals(2, read.rows);
+            assertEquals(2, read.cols);
+            assertArrayEquals(m.data, read.data);
+        }
+    }
+
+    @Test
+    void legacyTwoDimensionalSaveIsConvertedOnRead() throws Exception {
+        // new Matrix(new double[][]{{1, 2, 3}, {4, 5, 6}}) written by the double[][] version of Matrix
+        String legacy = "rO0ABXNyAB9wbC5tb3JwaC5haS5zbmFrZS5lbmdpbmUuTWF0cml4B+OyfNPk4bcCAANJAARjb2xzSQAEcm93c1sABm1hdHJpeHQA"
+                + "A1tbRHhwAAAAAwAAAAJ1cgADW1tEx60L/2Rn/0UCAAB4cAAAAAJ1cgACW0Q+powUq2NaHgIAAHhwAAAAAz/wAAAAAAAAQAAAAAAA"
+                + "AABACAAAAAAAAHVxAH4ABQAAAANAEAAAAAAAAEAUAAAAAAAAQBgAAAAAAAA=";
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(legacy)))) {
+            Matrix read = (Matrix) in.readObject();
+            assertEquals(2, read.rows);
+            assertEquals(3, read.cols);
+            assertArrayEquals(new double[]{1, 2, 3, 4, 5, 6}, read.data);
+            assertEquals(6.0, read.get(1, 2));
+        }
+    }
 }
@@ -0,0 +1,115 @@
+package pl.morph.ai.snake.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class NetworkSpecializerTest {
+
+    @Test
+    void specializedNetworkDecidesLikeScalarKernel() {
+        assertSameDecisions(26, 24, 3, 2);
+    }
+
+    @Test
+    void otherTopologiesAreSpecializedToo() {
+        assertSameDecisions(4, 5, 2, 3);
+        assertSameDecisions(6, 7, 4, 1);
+    }
+
+    @Test
+    void decideFindsTheSpecializedClassWithoutAllocating() {
+        assumeTrue(NetworkSpecializer.forTopology(26, 24, 3, 2) != null, "No system Java compiler on this runtime");
+        // Float networks take the specialized class with any dense kernel
+        NeuralNetwork nn = new NeuralNetwork(26, 24, 3, 2, Precision.FLOAT);
+        double[] in = new double[26];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = i / 26.0;
+        }
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+
+        int sum = 0;
+        for (int n = 0; n < 20000; n++) {
+            sum += nn.decide(in);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int n = 0; n < 10000; n++) {
+            sum += nn.decide(in);
+        }
+        allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+
+        assertTrue(sum >= 0);
+        // A key string per decision would be hundreds of kilobytes
+        assertTrue(allocated < 1024, allocated + " bytes");
+    }
+
+    @Test
+    void generatedCodeUsesConstantTripCounts() {
+        String code = NetworkSpecializer.generate("Network_4_5_2_1", 4, 5, 2, 1);
+        assertTrue(code.contains("i < 5;"));
+        assertTrue(code.contains("i < 2;"));
+        assertTrue(code.contains("final int b = o0 + i * 5;"));
+        assertTrue(code.contains("v += w0[b + 3] * in[3];"));
+        assertTrue(code.contains("v += w1[b + 4] * s[4];"));
+    }
+
+    private void assertSameDecisions(int input, int hidden, int output, int hiddenLayers) {
+        SpecializedNetwork specialized = NetworkSpecializer.forTopology(input, hidden, output, hiddenLayers);
+        assumeTrue(specialized != null, "No system Java compiler on this runtime");
+
+        Random random = new Random(7);
+        for (int n = 0; n < 100; n++) {
+            Precision precision = n % 2 == 0 ? Precision.DOUBLE : Precision.FLOAT;
+            NeuralNetwork nn = new NeuralNetwork(input, hidden, output, hiddenLayers, precision);
+            double[] in = new double[input];
+            for (int i = 0; i < in.length; i++) {
+                in[i] = random.nextDouble();
+            }
+
+            int actual;
+            if (precision == Precision.FLOAT) {
+                float[][] weights = new float[nn.weights.length][];
+                for (int l = 0; l < weights.length; l++) {
+                    weights[l] = nn.weights[l].floats;
+                }
+                actual = specialized.decide(weights, new int[weights.length], in, new float[nn.scratchSize()]);
+            } else {
+                double[][] weights = new double[nn.weights.length][];
+                for (int l = 0; l < weights.length; l++) {
+                    weights[l] = nn.weights[l].data;
+                }
+                actual = specialized.decide(weights, new int[weights.length], in, new double[nn.scratchSize()]);
+            }
+            assertEquals(scalarDecide(nn, in), actual, precision + " network " + n);
+        }
+    }
+
+    private static int scalarDecide(NeuralNetwork nn, double[] input) {
+        DenseKernel kernel = DenseKernels.scalar();
+        if (nn.getPrecision() == Precision.FLOAT) {
+            float[] curr = new float[input.length];
+            for (int i = 0; i < input.length; i++) {
+                curr[i] = (float) input[i];
+            }
+            for (int l = 0; l < nn.weights.length; l++) {
+                Matrix w = nn.weights[l];
+                float[] next = new float[w.rows];
+                kernel.dense(w.floats, 0, w.rows, w.cols, curr, 0, next, 0, l < nn.weights.length - 1);
+                curr = next;
+            }
+            return kernel.argmax(curr, 0, curr.length);
+        }
+        double[] curr = input;
+        for (int l = 0; l < nn.weights.length; l++) {
+            Matrix w = nn.weights[l];
+            double[] next = new double[w.rows];
+            kernel.dense(w.data, 0, w.rows, w.cols, curr, 0, next, 0, l < nn.weights.length - 1);
+            curr = next;
+        }
+        return kernel.argmax(curr, 0, curr.length);
+    }
+}
@@ -2,6 +2,12 @@ package pl.morph.ai.snake.engine;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class NeuralNetworkTest {
@@ -61,7 +67,7 @@ class NeuralNetworkTest {
         for (int w = 0; w < nn.weights.length; w++) {
             for (int i = 0; i < nn.weights[w].rows; i++) {
                 for (int j = 0; j < nn.weights[w].cols; j++) {
-                    if (nn.weights[w].matrix[i][j] != original.weights[w].matrix[i][j]) {
+                    if (nn.weights[w].get(i, j) != original.weights[w].get(i, j)) {
                         anyChanged = true;
                     }
                 }
@@ -95,13 +101,197 @@ class NeuralNetworkTest {
         for (int w = 0; w < nn.weights.length; w++) {
             for (int i = 0; i < nn.weights[w].rows; i++) {
                 for (int j = 0; j < nn.weights[w].cols; j++) {
-                    assertEquals(nn.weights[w].matrix[i][j], cloned.weights[w].matrix[i][j]);
+                    assertEquals(nn.weights[w].get(i, j), cloned.weights[w].get(i, j));
                 }
             }
         }
 
         // Independent
-        cloned.weights[0].matrix[0][0] = 999;
-        assertNotEquals(999, nn.weights[0].matrix[0][0]);
+        cloned.weights[0].set(0, 0, 999);
+        assertNotEquals(999, nn.weights[0].get(0, 0));
+    }
+
+    @Test
+    void outputIntoBuffersMatchesAllocatingOutput() {
+        NeuralNetwork nn = createNetwork();
+        double[] input = new double[26];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = Math.random();
+        }
+
+        double[] expected = nn.output(input);
+        double[] out = new double[3];
+        nn.output(input, out);
+        assertArrayEquals(expected, out);
+
+        double[] scratch = new double[nn.scratchSize()];
+        double[] outWithScratch = new double[3];
+        nn.output(input, outWithScratch, scratch);
+        assertArrayEquals(expected, outWithScratch);
+    }
+
+    @Test
+    void outputWithThreeHiddenLayersReusesScratch() {
+        NeuralNetwork nn = new NeuralNetwork(4, 5, 2, 3);
+        double[] input = {0.1, 0.2, 0.3, 0.4};
+
+        Matrix curr = nn.weights[0].singleColumnMatrixFromArray(input).addBias();
+        for (int i = 0; i < 3; i++) {
+            curr = nn.weights[i].dot(curr).activate().addBias();
+        }
+        double[] expected = nn.weights[3].dot(curr).softmax().toArray();
+
+        double[] out = new double[2];
+        nn.output(input, out);
+        assertArrayEquals(expected, out, 1e-12);
+    }
+
+    @Test
+    void floatNetworkMatchesDoubleNetworkWithinFloatTolerance() {
+        NeuralNetwork nn = createNetwork();
+        NeuralNetwork floats = nn.toPrecision(Precision.FLOAT);
+
+        assertEquals(Precision.FLOAT, floats.getPrecision());
+        assertNull(floats.weights[0].data);
+        assertEquals(24 * 27, floats.weights[0].floats.length);
+
+        double[] input = new double[26];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = 1.0 / (i + 1);
+        }
+        assertArrayEquals(nn.output(input), floats.output(input), 1e-4);
+
+        double[] out = new double[3];
+        floats.output(input, out, new float[floats.floatScratchSize()]);
+        assertArrayEquals(floats.output(input), out);
+    }
+
+    @Test
+    void floatGeneticOperatorsKeepPrecision() {
+        NeuralNetwork a = createNetwork().toPrecision(Precision.FLOAT);
+        NeuralNetwork b = createNetwork();
+
+        NeuralNetwork child = a.crossover(b);
+        assertEquals(Precision.FLOAT, child.getPrecision());
+        assertEquals(Precision.FLOAT, child.weights[1].precision);
+
+        child.mutate(1.0);
+        for (Matrix w : child.weights) {
+            for (float value : w.floats) {
+                assertTrue(value >= -1 && value <= 1);
+            }
+        }
+        assertEquals(Precision.FLOAT, child.clone().getPrecision());
+    }
+
+    @Test
+    void savedNetworkRecordsPrecision() throws Exception {
+        NeuralNetwork floats = createNetwork().toPrecision(Precision.FLOAT);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(floats);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            NeuralNetwork read = (NeuralNetwork) in.readObject();
+            assertEquals(Precision.FLOAT, read.getPrecision());
+            assertArrayEquals(floats.weights[2].floats, read.weights[2].floats);
+
+            NeuralNetwork back = read.toPrecision(Precision.DOUBLE);
+            assertEquals(Precision.DOUBLE, back.getPrecision());
+            assertEquals((double) floats.weights[2].floats[4], back.weights[2].data[4]);
+        }
+    }
+
+    @Test
+    void decideMatchesArgmaxOfOutput() {
+        for (Precision precision : Precision.values()) {
+            for (int n = 0; n < 50; n++) {
+                NeuralNetwork nn = new NeuralNetwork(26, 24, 3, 2, precision);
+                double[] input = new double[26];
+                for (int i = 0; i < input.length; i++) {
+                    input[i] = Math.random();
+                }
+                assertEquals(NeuralNetwork.argmax(nn.output(input)), nn.decide(input), precision + " network " + n);
+            }
+        }
+    }
+
+    @Test
+    void unrandomizedNetworkStartsAtZero() {
+        NeuralNetwork nn = new NeuralNetwork(26, 24, 3, 2, Precision.DOUBLE, false);
+        for (Matrix w : nn.weights) {
+            for (double value : w.data) {
+                assertEquals(0, value);
+            }
+        }
+    }
+
+    @Test
+    void copyIntoOverwritesRecycledNetwork() {
+        NeuralNetwork nn = createNetwork();
+        NeuralNetwork recycled = createNetwork();
+        double[][] before = new double[recycled.weights.length][];
+        for (int i = 0; i < before.length; i++) {
+            before[i] = recycled.weights[i].data;
+        }
+
+        nn.copyInto(recycled);
+        for (int i = 0; i < nn.weights.length; i++) {
+            assertSame(before[i], recycled.weights[i].data);
+            assertArrayEquals(nn.weights[i].data, recycled.weights[i].data);
+        }
+
+        NeuralNetwork floats = new NeuralNetwork(26, 24, 3, 2, Precision.FLOAT, false);
+        nn.copyInto(floats);
+        assertEquals(Precision.FLOAT, floats.getPrecision());
+        assertEquals((float) nn.weights[1].data[7], floats.weights[1].floats[7]);
+    }
+
+    @Test
+    void crossoverIntoTakesEveryWeightFromAParent() {
+        NeuralNetwork a = createNetwork();
+        NeuralNetwork b = createNetwork();
+        NeuralNetwork child = createNetwork();
+        a.crossoverInto(b, child);
+
+        for (int l = 0; l < child.weights.length; l++) {
+            double[] values = child.weights[l].data;
+            // Prefix from a, the rest from b
+            int split = 0;
+            while (split < values.length && values[split] == a.weights[l].data[split]) {
+                split++;
+            }
+            assertTrue(split >= 1);
+            for (int i = split; i < values.length; i++) {
+                assertEquals(b.weights[l].data[i], values[i]);
+            }
+        }
+    }
+
+    @Test
+    void batchedDecideMatchesDecidePerRow() {
+        for (Precision precision : Precision.values()) {
+            NeuralNetwork nn = new NeuralNetwork(26, 24, 3, 2, precision);
+            // More rows than one tile and a range that ends mid tile and mid group of four
+            double[][] inputs = new double[75][26];
+            for (double[] input : inputs) {
+                for (int i = 0; i < input.length; i++) {
+                    input[i] = Math.random();
+                }
+            }
+            int[] decisions = new int[75];
+            decisions[0] = -1;
+
+            nn.decide(inputs, decisions, 1, 75);
+
+            assertEquals(-1, decisions[0]);
+            for (int k = 1; k < inputs.length; k++) {
+                assertEquals(nn.decide(inputs[k]), decisions[k], precision + " row " + k);
+            }
+
+            int[] all = nn.decide(inputs);
+            assertEquals(nn.decide(inputs[0]), all[0]);
+            assertArrayEquals(Arrays.copyOfRange(decisions, 1, 75), Arrays.copyOfRange(all, 1, 75));
+        }
     }
 }
@@ -0,0 +1,99 @@
+package pl.morph.ai.snake.engine;
+
+import pl.morph.ai.snake.element.Snake;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Genetic algorithm against evolution strategies on equal compute: both play the same number of generations of the
+ * same population size, one episode per genome, spread over all cores. Prints the best and mean score per generation
+ * and the wall-clock time until the best score first reached the target. Not a unit test, run it from the test
+ * class path:
+ * {@code java -cp target/classes:target/test-classes pl.morph.ai.snake.engine.OptimizerBenchmark [population] [generations] [targetScore]}
+ */
+public class OptimizerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int population = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int generations = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        int target = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            run(new GeneticOptimizer(), population, generations, target, executor);
+            run(new EvolutionStrategies(0.1, 0.03, 1), population, generations, target, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void run(Optimizer optimizer, int population, int generations, int target,
+                            ExecutorService executor) throws Exception {
+        final EpisodeRunner runner = new EpisodeRunner();
+        NeuralNetwork[][] buffers = new NeuralNetwork[2][population];
+        for (int i = 0; i < population; i++) {
+            buffers[0][i] = new NeuralNetwork(26, 24, 3, 2);
+            buffers[1][i] = new NeuralNetwork(26, 24, 3, 2, Precision.DOUBLE, false);
+        }
+
+        System.out.println(optimizer.name() + ", " + population + " genomes");
+        long start = System.nanoTime();
+        long reached = -1;
+        for (int g = 0; g < generations; g++) {
+            final NeuralNetwork[] current = buffers[g & 1];
+            final Snake[] played = new Snake[population];
+            int workers = Runtime.getRuntime().availableProcessors();
+            int chunk = (population + workers - 1) / workers;
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (int from = 0; from < population; from += chunk) {
+                final int first = from;
+                final int last = Math.min(from + chunk, population);
+                tasks.add(new Callable<Void>() {
+                    public Void call() {
+                        for (int i = first; i < last; i++) {
+                            Snake snake = runner.newSnake(current[i]);
+                            runner.play(snake, current[i], null);
+                            snake.calculateFitness();
+                            played[i] = snake;
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+
+            List<Snake> generation = new ArrayList<Snake>();
+            Collections.addAll(generation, played);
+            Collections.sort(generation, new Comparator<Snake>() {
+                public int compare(Snake a, Snake b) {
+                    return Double.compare(b.getFitness(), a.getFitness());
+                }
+            });
+            int best = 0;
+            long total = 0;
+            for (Snake snake : generation) {
+                best = Math.max(best, snake.getScore());
+                total += snake.getScore();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (reached < 0 && best >= target) {
+                reached = elapsed;
+            }
+            System.out.println(String.format("  gen %3d  best %3d  mean %6.2f  %7.1f s",
+                    g, best, (double) total / population, elapsed / 1e9));
+
+            optimizer.breed(generation, buffers[(g + 1) & 1], 0);
+        }
+        System.out.println(reached < 0 ? "  target score " + target + " not reached"
+                : String.format("  target score %d reached after %.1f s", target, reached / 1e9));
+    }
+}
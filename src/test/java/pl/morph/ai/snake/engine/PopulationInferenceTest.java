@@ -0,0 +1,89 @@
+package pl.morph.ai.snake.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PopulationInferenceTest {
+
+    @Test
+    void batchedOutputMatchesPerNetworkOutput() {
+        assertBatchedMatchesPerNetwork(Precision.DOUBLE);
+    }
+
+    @Test
+    void batchedFloatOutputMatchesPerNetworkOutput() {
+        assertBatchedMatchesPerNetwork(Precision.FLOAT);
+    }
+
+    private void assertBatchedMatchesPerNetwork(Precision precision) {
+        // More snakes than one block, and a slot order that skips some of them like dead snakes would
+        List<NeuralNetwork> brains = new ArrayList<NeuralNetwork>();
+        for (int i = 0; i < 75; i++) {
+            brains.add(new NeuralNetwork(26, 24, 3, 2, precision));
+        }
+        PopulationInference population = new PopulationInference();
+        assertTrue(population.pack(brains));
+        assertEquals(75, population.size());
+
+        int[] slots = new int[50];
+        double[][] inputs = new double[50][];
+        double[][] outputs = new double[50][];
+        for (int k = 0; k < slots.length; k++) {
+            slots[k] = (k * 3) % 75;
+            inputs[k] = new double[26];
+            for (int i = 0; i < 26; i++) {
+                inputs[k][i] = Math.random();
+            }
+            outputs[k] = new double[3];
+        }
+
+        population.output(slots, inputs, outputs, 0, 20);
+        population.output(slots, inputs, outputs, 20, 50);
+
+        for (int k = 0; k < slots.length; k++) {
+            assertArrayEquals(brains.get(slots[k]).output(inputs[k]), outputs[k], "slot " + slots[k]);
+        }
+    }
+
+    @Test
+    void batchedDecisionsMatchPerNetworkDecisions() {
+        for (Precision precision : Precision.values()) {
+            List<NeuralNetwork> brains = new ArrayList<NeuralNetwork>();
+            for (int i = 0; i < 40; i++) {
+                brains.add(new NeuralNetwork(26, 24, 3, 2, precision));
+            }
+            PopulationInference population = new PopulationInference();
+            assertTrue(population.pack(brains));
+
+            int[] slots = new int[40];
+            double[][] inputs = new double[40][];
+            int[] decisions = new int[40];
+            for (int k = 0; k < slots.length; k++) {
+                slots[k] = 39 - k;
+                inputs[k] = new double[26];
+                for (int i = 0; i < 26; i++) {
+                    inputs[k][i] = Math.random();
+                }
+            }
+
+            population.decide(slots, inputs, decisions, 0, 40);
+
+            for (int k = 0; k < slots.length; k++) {
+                assertEquals(brains.get(slots[k]).decide(inputs[k]), decisions[k], precision + " slot " + slots[k]);
+            }
+        }
+    }
+
+    @Test
+    void packRejectsMixedTopologies() {
+        PopulationInference population = new PopulationInference();
+        List<NeuralNetwork> brains = Arrays.asList(new NeuralNetwork(26, 24, 3, 2), new NeuralNetwork(26, 16, 3, 2));
+        assertFalse(population.pack(brains));
+        assertEquals(0, population.size());
+    }
+}
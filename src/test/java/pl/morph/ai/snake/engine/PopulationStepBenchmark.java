@@ -0,0 +1,97 @@
+package pl.morph.ai.snake.engine;
+
+import pl.morph.ai.snake.element.Snake;
+import pl.morph.ai.snake.element.Wall;
+import pl.morph.ai.snake.element.WallManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Ticks per second of a whole generation played the ways {@link SimulationEngine} can step it: snake by snake
+ * through {@code think()} (the {@link NetworkSpecializer} class when one was compiled), snake by snake through the
+ * generic kernel, and the engine's batched step with one {@link PopulationInference} pass per tick. Every way plays
+ * the same games from the same seeds. Not a unit test, run it from the test class path:
+ * {@code java -cp target/classes:target/test-classes pl.morph.ai.snake.engine.PopulationStepBenchmark [snakes] [FLOAT|DOUBLE]}
+ */
+public class PopulationStepBenchmark {
+    private static final String[] MODES = {"think()", "generic", "batched"};
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        Precision precision = args.length > 1 ? Precision.valueOf(args[1]) : Precision.FLOAT;
+        List<Wall> walls = WallManager.prepareWalls(40, SimulationEngine.B_WIDTH, SimulationEngine.B_HEIGHT);
+        List<NeuralNetwork> brains = new ArrayList<NeuralNetwork>();
+        for (int i = 0; i < count; i++) {
+            brains.add(new NeuralNetwork(26, 24, 3, 2, precision));
+        }
+
+        System.out.println(count + " snakes, " + precision);
+        for (int round = 0; round < 4; round++) {
+            StringBuilder line = new StringBuilder(round == 0 ? "warmup " : "       ");
+            for (int mode = 0; mode < MODES.length; mode++) {
+                List<Snake> snakes = new ArrayList<Snake>();
+                for (int i = 0; i < count; i++) {
+                    Snake snake = new Snake(SimulationEngine.B_WIDTH, SimulationEngine.B_HEIGHT, 0, false, null, 40,
+                            walls, brains.get(i));
+                    snake.setRandom(new Random(i));
+                    snake.setRandomStartingPosition();
+                    snake.spawnApple();
+                    snakes.add(snake);
+                }
+                long start = System.nanoTime();
+                long ticks = play(snakes, brains, mode);
+                long elapsed = System.nanoTime() - start;
+                line.append(String.format("  %s %,10.0f ticks/s", MODES[mode], ticks * 1e9 / elapsed));
+            }
+            System.out.println(line);
+        }
+    }
+
+    // Like SimulationEngine.stepEach() or stepBatched() on every tick, slots[k] is the brain of the k-th snake alive
+    private static long play(List<Snake> snakes, List<NeuralNetwork> brains, int mode) {
+        PopulationInference population = new PopulationInference();
+        if (mode == 2) {
+            population.pack(brains);
+        }
+        int alive = snakes.size();
+        int[] slots = new int[alive];
+        for (int k = 0; k < alive; k++) {
+            slots[k] = k;
+        }
+        double[][] inputs = new double[alive][];
+        int[] decisions = new int[alive];
+        long ticks = 0;
+        while (alive > 0) {
+            ticks += alive;
+            for (int k = 0; k < alive; k++) {
+                Snake snake = snakes.get(slots[k]);
+                snake.look();
+                if (mode == 0) {
+                    snake.think();
+                } else if (mode == 1) {
+                    snake.act(snake.getBrain().decideGeneric(snake.getVision()));
+                } else {
+                    inputs[k] = snake.getVision();
+                }
+            }
+            if (mode == 2) {
+                population.decide(slots, inputs, decisions, 0, alive);
+                for (int k = 0; k < alive; k++) {
+                    snakes.get(slots[k]).act(decisions[k]);
+                }
+            }
+            int next = 0;
+            for (int k = 0; k < alive; k++) {
+                Snake snake = snakes.get(slots[k]);
+                snake.move();
+                if (snake.inGame) {
+                    slots[next++] = slots[k];
+                }
+            }
+            alive = next;
+        }
+        return ticks;
+    }
+}
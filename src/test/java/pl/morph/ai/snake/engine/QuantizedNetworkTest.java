@@ -0,0 +1,57 @@
+package pl.morph.ai.snake.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantizedNetworkTest {
+
+    @Test
+    void quantizedNetworkMostlyAgreesWithFullNetwork() {
+        NeuralNetwork nn = new NeuralNetwork(26, 24, 3, 2);
+        QuantizedNetwork quantized = new QuantizedNetwork(nn);
+
+        List<double[]> inputs = new ArrayList<double[]>();
+        for (int n = 0; n < 1000; n++) {
+            double[] input = new double[26];
+            for (int i = 0; i < input.length; i++) {
+                input[i] = Math.random();
+            }
+            inputs.add(input);
+        }
+        assertTrue(PolicyComparison.agreement(nn, quantized, inputs) > 950);
+    }
+
+    @Test
+    void quantizedWeightsAreSmallerThanFloatWeights() {
+        NeuralNetwork nn = new NeuralNetwork(26, 24, 3, 2, Precision.FLOAT);
+        QuantizedNetwork quantized = new QuantizedNetwork(nn);
+        assertTrue(quantized.sizeInBytes() * 2 < PolicyComparison.sizeInBytes(nn));
+    }
+
+    @Test
+    void zeroInputDecidesByBiasOnly() {
+        NeuralNetwork nn = new NeuralNetwork(2, 3, 3, 1);
+        for (Matrix w : nn.weights) {
+            for (int i = 0; i < w.rows; i++) {
+                for (int j = 0; j < w.cols; j++) {
+                    w.set(i, j, j == w.cols - 1 ? 0.1 * i : 0.5);
+                }
+            }
+        }
+        assertEquals(nn.decide(new double[2]), new QuantizedNetwork(nn).decide(new double[2]));
+    }
+
+    @Test
+    void episodeRunnerRecordsEveryVision() {
+        EpisodeRunner runner = new EpisodeRunner();
+        NeuralNetwork nn = new NeuralNetwork(26, 24, 3, 2);
+        List<double[]> visions = new ArrayList<double[]>();
+        runner.play(nn, new QuantizedNetwork(nn), visions);
+        assertFalse(visions.isEmpty());
+        assertEquals(26, visions.get(0).length);
+    }
+}
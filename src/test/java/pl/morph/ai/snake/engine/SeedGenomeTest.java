@@ -0,0 +1,113 @@
+package pl.morph.ai.snake.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeedGenomeTest {
+
+    private SeedGenome lineage(long seed, int mutations) {
+        SeedGenome genome = SeedGenome.random(26, 24, 3, 2, Precision.DOUBLE, seed);
+        for (int i = 0; i < mutations; i++) {
+            genome = genome.mutate(seed * 1000 + i, 0.03);
+        }
+        return genome;
+    }
+
+    @Test
+    void sameLineageRebuildsSameWeights() {
+        NeuralNetwork a = lineage(11, 30).materialize();
+        // Built step by step through the cache vs. in one go from a lineage nothing of is cached
+        SeedGenome genome = SeedGenome.random(26, 24, 3, 2, Precision.DOUBLE, 11);
+        NeuralNetwork stepwise = null;
+        for (int i = 0; i < 30; i++) {
+            genome = genome.mutate(11 * 1000 + i, 0.03);
+            stepwise = genome.materialize();
+        }
+        for (int l = 0; l < a.weights.length; l++) {
+            assertArrayEquals(a.weights[l].data, stepwise.weights[l].data);
+        }
+        assertEquals(lineage(11, 30), genome);
+    }
+
+    @Test
+    void mutationChangesAboutRateShareOfWeights() {
+        SeedGenome parent = SeedGenome.random(26, 24, 3, 2, Precision.DOUBLE, 5);
+        int changed = 0;
+        int total = 0;
+        for (int run = 0; run < 20; run++) {
+            NeuralNetwork before = parent.materialize();
+            NeuralNetwork after = parent.mutate(run, 0.03).materialize();
+            for (int l = 0; l < before.weights.length; l++) {
+                for (int i = 0; i < before.weights[l].size(); i++) {
+                    double value = after.weights[l].data[i];
+                    assertTrue(value >= -1 && value <= 1);
+                    if (value != before.weights[l].data[i]) changed++;
+                    total++;
+                }
+            }
+        }
+        // 20 * 1323 * 0.03 = about 794
+        assertTrue(changed > 0.025 * total && changed < 0.035 * total, "changed " + changed);
+    }
+
+    @Test
+    void callersGetTheirOwnCopy() {
+        SeedGenome genome = lineage(7, 10);
+        NeuralNetwork first = genome.materialize();
+        double weight = first.weights[1].data[3];
+        first.weights[1].data[3] = weight + 0.5;
+        first.mutate(1);
+
+        NeuralNetwork second = genome.materialize();
+        assertNotSame(first, second);
+        assertEquals(weight, second.weights[1].data[3]);
+        NeuralNetwork into = new NeuralNetwork(26, 24, 3, 2, Precision.DOUBLE, true);
+        genome.materializeInto(into);
+        for (int l = 0; l < second.weights.length; l++) {
+            assertArrayEquals(second.weights[l].data, into.weights[l].data);
+        }
+    }
+
+    @Test
+    void vanishingRatesChangeNothing() {
+        SeedGenome parent = SeedGenome.random(26, 24, 3, 2, Precision.DOUBLE, 8);
+        NeuralNetwork before = parent.materialize();
+        NeuralNetwork after = parent.mutate(1, 1e-17).mutate(2, 1e-300).materialize();
+        for (int l = 0; l < before.weights.length; l++) {
+            assertArrayEquals(before.weights[l].data, after.weights[l].data);
+        }
+    }
+
+    @Test
+    void lineageIsFarSmallerThanWeights() throws Exception {
+        SeedGenome genome = lineage(3, 20);
+        assertEquals(8 + 12 * 20, genome.encodedBytes());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(genome);
+        }
+        assertTrue(bytes.size() < 1000, "serialized " + bytes.size());
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            SeedGenome read = (SeedGenome) in.readObject();
+            assertEquals(genome, read);
+            assertArrayEquals(genome.materialize().weights[2].data, read.materialize().weights[2].data);
+        }
+    }
+
+    @Test
+    void floatGenomesAndCacheBound() {
+        SeedGenome genome = SeedGenome.random(4, 5, 2, 1, Precision.FLOAT, 9);
+        for (int i = 0; i < SeedGenome.CACHE_SIZE + 10; i++) {
+            genome = genome.mutate(i, 0.1);
+            assertEquals(Precision.FLOAT, genome.materialize().getPrecision());
+        }
+        assertTrue(SeedGenome.cacheSize() <= SeedGenome.CACHE_SIZE);
+    }
+}
@@ -0,0 +1,88 @@
+package pl.morph.ai.snake.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparseNetworkTest {
+
+    private List<double[]> randomInputs(int count) {
+        List<double[]> inputs = new ArrayList<double[]>();
+        for (int n = 0; n < count; n++) {
+            double[] input = new double[26];
+            for (int i = 0; i < input.length; i++) {
+                input[i] = Math.random();
+            }
+            inputs.add(input);
+        }
+        return inputs;
+    }
+
+    @Test
+    void sparseCopyOfDenseNetworkDecidesTheSame() {
+        NeuralNetwork nn = new NeuralNetwork(26, 24, 3, 2);
+        SparseNetwork sparse = new SparseNetwork(nn);
+        assertEquals(24 * 26 + 24 * 24 + 3 * 24, sparse.nonZeros());
+
+        List<double[]> inputs = randomInputs(200);
+        assertEquals(inputs.size(), PolicyComparison.agreement(nn, sparse, inputs));
+    }
+
+    @Test
+    void sparseNetworkSkipsZeroWeights() {
+        NeuralNetwork nn = new NeuralNetwork(26, 24, 3, 2);
+        for (int i = 0; i < nn.weights[0].rows; i++) {
+            for (int j = 0; j < 13; j++) {
+                nn.weights[0].set(i, j, 0);
+            }
+        }
+        SparseNetwork sparse = new SparseNetwork(nn);
+        assertEquals(24 * 13 + 24 * 24 + 3 * 24, sparse.nonZeros());
+
+        List<double[]> inputs = randomInputs(200);
+        assertEquals(inputs.size(), PolicyComparison.agreement(nn, sparse, inputs));
+    }
+
+    @Test
+    void pruningKeepsRequestedAgreement() {
+        NeuralNetwork nn = new NeuralNetwork(26, 24, 3, 2);
+        NeuralNetwork original = nn.clone();
+        List<double[]> inputs = randomInputs(500);
+
+        NeuralNetwork pruned = NetworkPruner.prune(nn, inputs, 0.9);
+        SparseNetwork sparse = new SparseNetwork(pruned);
+
+        assertTrue(sparse.nonZeros() < new SparseNetwork(nn).nonZeros());
+        assertTrue(PolicyComparison.agreement(nn, sparse, inputs) >= 0.9 * inputs.size());
+        assertArrayEquals(original.weights[0].data, nn.weights[0].data);
+    }
+
+    @Test
+    void floatNetworksStayFloat() {
+        NeuralNetwork nn = new NeuralNetwork(26, 24, 3, 2, Precision.FLOAT);
+        SparseNetwork sparse = new SparseNetwork(NetworkPruner.prune(nn, randomInputs(300), 0.95));
+
+        assertEquals(Precision.FLOAT, sparse.getPrecision());
+        assertTrue(sparse.sizeInBytes() < new SparseNetwork(nn.toPrecision(Precision.DOUBLE)).sizeInBytes());
+        List<double[]> inputs = randomInputs(200);
+        assertEquals(inputs.size(), PolicyComparison.agreement(nn, new SparseNetwork(nn), inputs));
+    }
+
+    @Test
+    void pruningNetworksWithFewerWeightsThanSteps() {
+        NeuralNetwork nn = new NeuralNetwork(3, 2, 2, 1);
+        List<double[]> inputs = new ArrayList<double[]>();
+        for (int n = 0; n < 50; n++) {
+            inputs.add(new double[]{Math.random(), Math.random(), Math.random()});
+        }
+
+        NeuralNetwork pruned = NetworkPruner.prune(nn, inputs, 0);
+
+        // Nothing needs to agree, so every weight goes, the biases stay
+        assertEquals(0, new SparseNetwork(pruned).nonZeros());
+        assertEquals(nn.weights[0].get(1, 3), pruned.weights[0].get(1, 3));
+    }
+}